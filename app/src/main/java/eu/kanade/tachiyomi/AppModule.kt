@@ -10,6 +10,7 @@ import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import eu.kanade.tachiyomi.data.track.TrackManager
 import eu.kanade.tachiyomi.extension.ExtensionManager
 import eu.kanade.tachiyomi.network.NetworkHelper
+import eu.kanade.tachiyomi.source.SourceCircuitBreaker
 import eu.kanade.tachiyomi.source.SourceManager
 import rx.Observable
 import rx.schedulers.Schedulers
@@ -35,6 +36,8 @@ class AppModule(val app: Application) : InjektModule {
 
         addSingletonFactory { ExtensionManager(app) }
 
+        addSingletonFactory { SourceCircuitBreaker() }
+
         addSingletonFactory { DownloadManager(app) }
 
         addSingletonFactory { TrackManager(app) }
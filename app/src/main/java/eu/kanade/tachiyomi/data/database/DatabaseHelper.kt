@@ -24,6 +24,8 @@ open class DatabaseHelper(context: Context)
 
     inline fun inTransaction(block: () -> Unit) = db.inTransaction(block)
 
+    inline fun <T> inTransactionReturn(block: () -> T) = db.inTransactionReturn(block)
+
     fun lowLevel() = db.lowLevel()
 
 }
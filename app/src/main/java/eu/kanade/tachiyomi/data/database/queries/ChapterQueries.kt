@@ -34,6 +34,13 @@ interface ChapterQueries : DbProvider {
             .withGetResolver(MangaChapterGetResolver.INSTANCE)
             .prepare()
 
+    fun getLibraryChapterDates() = db.get()
+            .cursor()
+            .withQuery(RawQuery.builder()
+                    .query(getLibraryChapterDatesQuery())
+                    .build())
+            .prepare()
+
     fun getChapter(id: Long) = db.get()
             .`object`(Chapter::class.java)
             .withQuery(Query.builder()
@@ -43,6 +50,15 @@ interface ChapterQueries : DbProvider {
                     .build())
             .prepare()
 
+    fun getChapters(ids: Collection<Long>) = db.get()
+            .listOfObjects(Chapter::class.java)
+            .withQuery(Query.builder()
+                    .table(ChapterTable.TABLE)
+                    .where("${ChapterTable.COL_ID} IN (${ids.joinToString { "?" }})")
+                    .whereArgs(*ids.toTypedArray())
+                    .build())
+            .prepare()
+
     fun getChapter(url: String) = db.get()
             .`object`(Chapter::class.java)
             .withQuery(Query.builder()
@@ -7,6 +7,7 @@ import eu.kanade.tachiyomi.data.database.DbProvider
 import eu.kanade.tachiyomi.data.database.models.LibraryManga
 import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.database.resolvers.LibraryMangaGetResolver
+import eu.kanade.tachiyomi.data.database.resolvers.MangaDetailsPutResolver
 import eu.kanade.tachiyomi.data.database.resolvers.MangaFavoritePutResolver
 import eu.kanade.tachiyomi.data.database.resolvers.MangaFlagsPutResolver
 import eu.kanade.tachiyomi.data.database.resolvers.MangaLastUpdatedPutResolver
@@ -14,6 +15,7 @@ import eu.kanade.tachiyomi.data.database.tables.CategoryTable
 import eu.kanade.tachiyomi.data.database.tables.ChapterTable
 import eu.kanade.tachiyomi.data.database.tables.MangaCategoryTable
 import eu.kanade.tachiyomi.data.database.tables.MangaTable
+import eu.kanade.tachiyomi.source.model.SManga
 
 interface MangaQueries : DbProvider {
 
@@ -61,6 +63,15 @@ interface MangaQueries : DbProvider {
                     .build())
             .prepare()
 
+    fun getMangas(ids: Collection<Long>) = db.get()
+            .listOfObjects(Manga::class.java)
+            .withQuery(Query.builder()
+                    .table(MangaTable.TABLE)
+                    .where("${MangaTable.COL_ID} IN (${ids.joinToString { "?" }})")
+                    .whereArgs(*ids.toTypedArray())
+                    .build())
+            .prepare()
+
     fun insertManga(manga: Manga) = db.put().`object`(manga).prepare()
 
     fun insertMangas(mangas: List<Manga>) = db.put().objects(mangas).prepare()
@@ -75,6 +86,22 @@ interface MangaQueries : DbProvider {
             .withPutResolver(MangaLastUpdatedPutResolver())
             .prepare()
 
+    fun updateLastUpdated(mangas: List<Manga>) = db.put()
+            .objects(mangas)
+            .withPutResolver(MangaLastUpdatedPutResolver())
+            .prepare()
+
+    /**
+     * Updates the details of the given manga that changed from their previous details, in a
+     * single transaction.
+     *
+     * @param updates the manga and their details before updating them.
+     */
+    fun updateMangaDetails(updates: List<Pair<Manga, SManga>>) = db.put()
+            .objects(updates)
+            .withPutResolver(MangaDetailsPutResolver())
+            .prepare()
+
     fun updateMangaFavorite(manga: Manga) = db.put()
             .`object`(manga)
             .withPutResolver(MangaFavoritePutResolver())
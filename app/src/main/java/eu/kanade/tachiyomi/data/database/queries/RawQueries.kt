@@ -110,4 +110,18 @@ fun getCategoriesForMangaQuery() = """
     JOIN ${MangaCategory.TABLE} ON ${Category.TABLE}.${Category.COL_ID} =
     ${MangaCategory.TABLE}.${MangaCategory.COL_CATEGORY_ID}
     WHERE ${MangaCategory.COL_MANGA_ID} = ?
-"""
\ No newline at end of file
+"""
+
+/**
+ * Query to get the release dates of the chapters of manga from the library. The fetch date is used
+ * for chapters without upload date.
+ */
+fun getLibraryChapterDatesQuery() = """
+    SELECT ${Chapter.TABLE}.${Chapter.COL_MANGA_ID},
+    CASE WHEN ${Chapter.COL_DATE_UPLOAD} > 0 THEN ${Chapter.COL_DATE_UPLOAD}
+    ELSE ${Chapter.COL_DATE_FETCH} END AS date
+    FROM ${Chapter.TABLE}
+    JOIN ${Manga.TABLE}
+    ON ${Manga.TABLE}.${Manga.COL_ID} = ${Chapter.TABLE}.${Chapter.COL_MANGA_ID}
+    WHERE ${Manga.TABLE}.${Manga.COL_FAVORITE} = 1
+"""
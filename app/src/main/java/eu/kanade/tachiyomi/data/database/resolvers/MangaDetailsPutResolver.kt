@@ -0,0 +1,47 @@
+package eu.kanade.tachiyomi.data.database.resolvers
+
+import android.content.ContentValues
+import com.pushtorefresh.storio.sqlite.StorIOSQLite
+import com.pushtorefresh.storio.sqlite.operations.put.PutResolver
+import com.pushtorefresh.storio.sqlite.operations.put.PutResult
+import com.pushtorefresh.storio.sqlite.queries.UpdateQuery
+import eu.kanade.tachiyomi.data.database.models.Manga
+import eu.kanade.tachiyomi.data.database.tables.MangaTable
+import eu.kanade.tachiyomi.source.model.SManga
+
+/**
+ * Writes the details of a manga that changed from its previous details, given as the second value
+ * of the pair. The row isn't touched if nothing changed.
+ */
+class MangaDetailsPutResolver : PutResolver<Pair<Manga, SManga>>() {
+
+    override fun performPut(db: StorIOSQLite, update: Pair<Manga, SManga>): PutResult {
+        val (manga, previous) = update
+        val updateQuery = mapToUpdateQuery(manga)
+        val contentValues = mapToContentValues(manga, previous)
+
+        if (contentValues.size() == 0) {
+            return PutResult.newUpdateResult(0, updateQuery.table())
+        }
+
+        val numberOfRowsUpdated = db.lowLevel().update(updateQuery, contentValues)
+        return PutResult.newUpdateResult(numberOfRowsUpdated, updateQuery.table())
+    }
+
+    fun mapToUpdateQuery(manga: Manga) = UpdateQuery.builder()
+            .table(MangaTable.TABLE)
+            .where("${MangaTable.COL_ID} = ?")
+            .whereArgs(manga.id)
+            .build()
+
+    fun mapToContentValues(manga: Manga, previous: SManga) = ContentValues().apply {
+        if (manga.author != previous.author) put(MangaTable.COL_AUTHOR, manga.author)
+        if (manga.artist != previous.artist) put(MangaTable.COL_ARTIST, manga.artist)
+        if (manga.description != previous.description) put(MangaTable.COL_DESCRIPTION, manga.description)
+        if (manga.genre != previous.genre) put(MangaTable.COL_GENRE, manga.genre)
+        if (manga.thumbnail_url != previous.thumbnail_url) put(MangaTable.COL_THUMBNAIL_URL, manga.thumbnail_url)
+        if (manga.status != previous.status) put(MangaTable.COL_STATUS, manga.status)
+        if (manga.initialized != previous.initialized) put(MangaTable.COL_INITIALIZED, manga.initialized)
+    }
+
+}
@@ -3,14 +3,22 @@ package eu.kanade.tachiyomi.data.download
 import android.content.Context
 import android.net.Uri
 import com.hippo.unifile.UniFile
+import com.jakewharton.rxrelay.PublishRelay
 import eu.kanade.tachiyomi.data.database.models.Chapter
 import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import eu.kanade.tachiyomi.data.preference.getOrDefault
 import eu.kanade.tachiyomi.source.SourceManager
+import rx.Observable
+import rx.schedulers.Schedulers
+import timber.log.Timber
 import uy.kohesive.injekt.Injekt
 import uy.kohesive.injekt.api.get
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Cache where we dump the downloads directory from the filesystem. This class is needed because
@@ -18,6 +26,13 @@ import java.util.concurrent.TimeUnit
  * defined in [renewInterval] as we don't have any control over the filesystem and the user can
  * delete the folders at any time without the app noticing.
  *
+ * The cache is persisted to [indexFile] after every renewal and shortly after every change, so
+ * that it's available right after the app starts. Renewals only list again the manga directories
+ * whose modification time changed, or that the app changed since they were listed.
+ *
+ * Renewals always run in the background. Meanwhile the previous snapshot keeps being served, and
+ * the new one is swapped in at once when it's ready, emitting on [renewedRelay].
+ *
  * @param context the application context.
  * @param provider the downloads directories provider.
  * @param sourceManager the source manager.
@@ -35,21 +50,64 @@ class DownloadCache(private val context: Context,
     private val renewInterval = TimeUnit.HOURS.toMillis(1)
 
     /**
-     * The last time the cache was refreshed.
+     * The file where the cache is persisted.
+     */
+    private val indexFile = File(context.filesDir, INDEX_FILENAME)
+
+    /**
+     * The last time a renewal of the cache was started.
+     */
+    @Volatile private var lastRenew = 0L
+
+    /**
+     * Whether the persisted index has been read for the current downloads directory.
+     */
+    @Volatile private var isIndexLoaded = false
+
+    /**
+     * Whether a renewal is running.
+     */
+    private val isRenewing = AtomicBoolean(false)
+
+    /**
+     * Changes made to the cache while a renewal is running. They're applied again to the result
+     * of the renewal, as it may have listed the directories before they happened.
+     */
+    private var pendingChanges: MutableList<(RootDirectory) -> Unit>? = null
+
+    /**
+     * The root directory for downloads. It's replaced as a whole when the cache is renewed.
+     */
+    @Volatile private var rootDir = RootDirectory(getDirectoryFromPreference())
+
+    /**
+     * Relay that emits every time a renewal of the cache finishes.
      */
-    private var lastRenew = 0L
+    val renewedRelay: PublishRelay<Unit> = PublishRelay.create()
 
     /**
-     * The root directory for downloads.
+     * Relay used to persist the cache after it's changed.
      */
-    private var rootDir = RootDirectory(getDirectoryFromPreference())
+    private val saveRelay = PublishRelay.create<Unit>().toSerialized()
+
+    /**
+     * Lock held while the index is written.
+     */
+    private val indexLock = Any()
 
     init {
+        // Changes usually come in bursts, like the chapters of a download queue.
+        saveRelay.throttleLast(INDEX_SAVE_DELAY, TimeUnit.SECONDS, Schedulers.io())
+                .subscribe({ saveIndex(rootDir) }, { error -> Timber.e(error) })
+
         preferences.downloadsDirectory().asObservable()
                 .skip(1)
                 .subscribe {
-                    lastRenew = 0L // invalidate cache
-                    rootDir = RootDirectory(getDirectoryFromPreference())
+                    synchronized(this) {
+                        lastRenew = 0L // invalidate cache
+                        isIndexLoaded = false
+                        rootDir = RootDirectory(getDirectoryFromPreference())
+                    }
                 }
     }
 
@@ -105,45 +163,175 @@ class DownloadCache(private val context: Context,
     }
 
     /**
-     * Checks if the cache needs a renewal and performs it if needed.
+     * Loads the persisted index if needed and starts a renewal in the background if the cache
+     * expired. It never waits for the filesystem, the current snapshot is used until the renewal
+     * finishes.
      */
-    @Synchronized
     private fun checkRenew() {
-        if (lastRenew + renewInterval < System.currentTimeMillis()) {
-            renew()
+        loadIndexIfNeeded()
+        if (lastRenew + renewInterval < System.currentTimeMillis() &&
+                isRenewing.compareAndSet(false, true)) {
             lastRenew = System.currentTimeMillis()
+            Observable.fromCallable { renew() }
+                    .subscribeOn(Schedulers.io())
+                    .doAfterTerminate {
+                        synchronized(this) { pendingChanges = null }
+                        isRenewing.set(false)
+                    }
+                    .subscribe({ renewed ->
+                        if (renewed) renewedRelay.call(Unit)
+                    }, { error ->
+                        Timber.e(error)
+                    })
         }
     }
 
     /**
-     * Renews the downloads cache.
+     * Renews the downloads cache. Manga directories that weren't modified since the last renewal
+     * keep their cached chapters. It must be called in a background thread.
+     *
+     * @return true if the new snapshot was applied, false if it was discarded because the
+     * downloads directory changed meanwhile.
      */
-    private fun renew() {
+    private fun renew(): Boolean {
+        val root = synchronized(this) {
+            pendingChanges = mutableListOf()
+            rootDir
+        }
+
         val onlineSources = sourceManager.getOnlineSources()
 
-        val sourceDirs = rootDir.dir.listFiles()
+        val sourceDirs = root.dir.listFiles()
                 .orEmpty()
-                .associate { it.name to SourceDirectory(it) }
+                .associate { it.name to it }
                 .mapNotNullKeys { entry ->
                     onlineSources.find { provider.getSourceDirName(it) == entry.key }?.id
                 }
 
-        rootDir.files = sourceDirs
+        val files = sourceDirs.mapValues { (sourceId, sourceUniFile) ->
+            val cachedMangaDirs = root.files[sourceId]?.files.orEmpty()
 
-        sourceDirs.values.forEach { sourceDir ->
-            val mangaDirs = sourceDir.dir.listFiles()
+            val mangaDirs = sourceUniFile.listFiles()
                     .orEmpty()
-                    .associateNotNullKeys { it.name to MangaDirectory(it) }
+                    .associateNotNullKeys { it.name to it }
+                    .mapValues { (mangaDirName, mangaUniFile) ->
+                        val lastModified = mangaUniFile.lastModified()
+                        val cachedMangaDir = cachedMangaDirs[mangaDirName]
+                        if (cachedMangaDir != null && lastModified > 0L &&
+                                cachedMangaDir.lastModified == lastModified) {
+                            cachedMangaDir
+                        } else {
+                            // Chapters saved as archives are cached with the name of their directory
+                            val chapterDirs = mangaUniFile.listFiles()
+                                    .orEmpty()
+                                    .mapNotNull { it.name?.removeSuffix(DownloadProvider.CHAPTER_ARCHIVE_EXTENSION) }
+                                    .toHashSet()
 
-            sourceDir.files = mangaDirs
+                            MangaDirectory(chapterDirs, lastModified)
+                        }
+                    }
+
+            SourceDirectory(mangaDirs)
+        }
 
-            mangaDirs.values.forEach { mangaDir ->
-                val chapterDirs = mangaDir.dir.listFiles()
-                        .orEmpty()
-                        .mapNotNull { it.name }
-                        .toHashSet()
+        val newRoot = RootDirectory(root.dir, files)
+        synchronized(this) {
+            val changes = pendingChanges.orEmpty()
+            pendingChanges = null
 
-                mangaDir.files = chapterDirs
+            // Discard the result if the downloads directory changed meanwhile
+            if (root !== rootDir) return false
+
+            changes.forEach { it(newRoot) }
+            rootDir = newRoot
+        }
+
+        // Maps are never modified in place, so the snapshot can be written without locking.
+        saveIndex(newRoot)
+        return true
+    }
+
+    /**
+     * Loads the persisted cache into [rootDir] if it wasn't loaded yet.
+     */
+    private fun loadIndexIfNeeded() {
+        if (!isIndexLoaded) {
+            synchronized(this) {
+                if (!isIndexLoaded) {
+                    loadIndex()
+                    isIndexLoaded = true
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the persisted cache into [rootDir]. It's only a read of a small local file.
+     *
+     * @return true if the index exists and belongs to the current downloads directory.
+     */
+    private fun loadIndex(): Boolean {
+        if (!indexFile.exists()) return false
+
+        return try {
+            DataInputStream(indexFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != INDEX_VERSION) return false
+                if (input.readUTF() != rootDir.dir.uri.toString()) return false
+
+                val sourceDirs = HashMap<Long, SourceDirectory>()
+                repeat(input.readInt()) {
+                    val sourceId = input.readLong()
+                    val mangaDirs = HashMap<String, MangaDirectory>()
+                    repeat(input.readInt()) {
+                        val mangaDirName = input.readUTF()
+                        val lastModified = input.readLong()
+                        val chapterDirs = HashSet<String>()
+                        repeat(input.readInt()) {
+                            chapterDirs.add(input.readUTF())
+                        }
+                        mangaDirs.put(mangaDirName, MangaDirectory(chapterDirs, lastModified))
+                    }
+                    sourceDirs.put(sourceId, SourceDirectory(mangaDirs))
+                }
+                rootDir.files = sourceDirs
+            }
+            true
+        } catch (e: Exception) {
+            Timber.e(e)
+            indexFile.delete()
+            false
+        }
+    }
+
+    /**
+     * Persists the given cache to [indexFile]. It's written to a temporary file first, so that a
+     * previous index is never left half written.
+     *
+     * @param root the cache to persist.
+     */
+    private fun saveIndex(root: RootDirectory) {
+        synchronized(indexLock) {
+            val tmpFile = File(indexFile.path + ".tmp")
+            try {
+                DataOutputStream(tmpFile.outputStream().buffered()).use { output ->
+                    output.writeInt(INDEX_VERSION)
+                    output.writeUTF(root.dir.uri.toString())
+                    output.writeInt(root.files.size)
+                    root.files.forEach { (sourceId, sourceDir) ->
+                        output.writeLong(sourceId)
+                        output.writeInt(sourceDir.files.size)
+                        sourceDir.files.forEach { (mangaDirName, mangaDir) ->
+                            output.writeUTF(mangaDirName)
+                            output.writeLong(mangaDir.lastModified)
+                            output.writeInt(mangaDir.files.size)
+                            mangaDir.files.forEach { output.writeUTF(it) }
+                        }
+                    }
+                }
+                tmpFile.renameTo(indexFile)
+            } catch (e: Exception) {
+                Timber.e(e)
+                tmpFile.delete()
             }
         }
     }
@@ -151,31 +339,28 @@ class DownloadCache(private val context: Context,
     /**
      * Adds a chapter that has just been download to this cache.
      *
-     * @param chapterDirName the downloaded chapter's directory name.
-     * @param mangaUniFile the directory of the manga.
+     * @param chapterDirName the downloaded chapter's directory name, also for chapters saved as
+     * archives.
      * @param manga the manga of the chapter.
      */
     @Synchronized
-    fun addChapter(chapterDirName: String, mangaUniFile: UniFile, manga: Manga) {
-        // Retrieve the cached source directory or cache a new one
-        var sourceDir = rootDir.files[manga.source]
-        if (sourceDir == null) {
-            val source = sourceManager.get(manga.source) ?: return
-            val sourceUniFile = provider.findSourceDir(source) ?: return
-            sourceDir = SourceDirectory(sourceUniFile)
-            rootDir.files += manga.source to sourceDir
-        }
-
-        // Retrieve the cached manga directory or cache a new one
+    fun addChapter(chapterDirName: String, manga: Manga) {
+        sourceManager.get(manga.source) ?: return
         val mangaDirName = provider.getMangaDirName(manga)
-        var mangaDir = sourceDir.files[mangaDirName]
-        if (mangaDir == null) {
-            mangaDir = MangaDirectory(mangaUniFile)
-            sourceDir.files += mangaDirName to mangaDir
-        }
+        loadIndexIfNeeded()
+
+        applyChange { root ->
+            // Retrieve the cached source directory or cache a new one
+            var sourceDir = root.files[manga.source]
+            if (sourceDir == null) {
+                sourceDir = SourceDirectory()
+                root.files += manga.source to sourceDir
+            }
 
-        // Save the chapter directory
-        mangaDir.files += chapterDirName
+            // Save the chapter directory, listing the manga directory again on the next renewal
+            val chapterDirs = sourceDir.files[mangaDirName]?.files.orEmpty()
+            sourceDir.files += mangaDirName to MangaDirectory(chapterDirs + chapterDirName)
+        }
     }
 
     /**
@@ -186,11 +371,16 @@ class DownloadCache(private val context: Context,
      */
     @Synchronized
     fun removeChapter(chapter: Chapter, manga: Manga) {
-        val sourceDir = rootDir.files[manga.source] ?: return
-        val mangaDir = sourceDir.files[provider.getMangaDirName(manga)] ?: return
+        val mangaDirName = provider.getMangaDirName(manga)
         val chapterDirName = provider.getChapterDirName(chapter)
-        if (chapterDirName in mangaDir.files) {
-            mangaDir.files -= chapterDirName
+        loadIndexIfNeeded()
+
+        applyChange { root ->
+            val sourceDir = root.files[manga.source] ?: return@applyChange
+            val mangaDir = sourceDir.files[mangaDirName] ?: return@applyChange
+            if (chapterDirName in mangaDir.files) {
+                sourceDir.files += mangaDirName to MangaDirectory(mangaDir.files - chapterDirName)
+            }
         }
     }
 
@@ -201,30 +391,49 @@ class DownloadCache(private val context: Context,
      */
     @Synchronized
     fun removeManga(manga: Manga) {
-        val sourceDir = rootDir.files[manga.source] ?: return
         val mangaDirName = provider.getMangaDirName(manga)
-        if (mangaDirName in sourceDir.files) {
-            sourceDir.files -= mangaDirName
+        loadIndexIfNeeded()
+
+        applyChange { root ->
+            val sourceDir = root.files[manga.source] ?: return@applyChange
+            if (mangaDirName in sourceDir.files) {
+                sourceDir.files -= mangaDirName
+            }
         }
     }
 
+    /**
+     * Applies a change to the current snapshot, and records it if a renewal is running so that
+     * it's also applied to the new snapshot. The index is persisted again shortly after. It must
+     * be called while holding the lock of this cache.
+     *
+     * @param change the change to apply.
+     */
+    private fun applyChange(change: (RootDirectory) -> Unit) {
+        change(rootDir)
+        pendingChanges?.add(change)
+        saveRelay.call(Unit)
+    }
+
     /**
      * Class to store the files under the root downloads directory.
      */
     private class RootDirectory(val dir: UniFile,
-                                var files: Map<Long, SourceDirectory> = hashMapOf())
+                                @Volatile var files: Map<Long, SourceDirectory> = hashMapOf())
 
     /**
      * Class to store the files under a source directory.
      */
-    private class SourceDirectory(val dir: UniFile,
-                                  var files: Map<String, MangaDirectory> = hashMapOf())
+    private class SourceDirectory(@Volatile var files: Map<String, MangaDirectory> = hashMapOf())
 
     /**
      * Class to store the files under a manga directory.
+     *
+     * @param lastModified the modification time of the directory when it was listed, or 0 if
+     * unknown.
      */
-    private class MangaDirectory(val dir: UniFile,
-                                 var files: Set<String> = hashSetOf())
+    private class MangaDirectory(@Volatile var files: Set<String> = hashSetOf(),
+                                 val lastModified: Long = 0L)
 
     /**
      * Returns a new map containing only the key entries of [transform] that are not null.
@@ -249,4 +458,21 @@ class DownloadCache(private val context: Context,
         return destination
     }
 
+    private companion object {
+        /**
+         * Name of the file where the cache is persisted.
+         */
+        const val INDEX_FILENAME = "download_cache_index"
+
+        /**
+         * Version of the index format. Indexes with a different version are ignored.
+         */
+        const val INDEX_VERSION = 1
+
+        /**
+         * Seconds to wait after a change before persisting the index.
+         */
+        const val INDEX_SAVE_DELAY = 5L
+    }
+
 }
@@ -1,13 +1,18 @@
 package eu.kanade.tachiyomi.data.download
 
 import android.content.Context
+import android.net.Uri
 import com.hippo.unifile.UniFile
 import com.jakewharton.rxrelay.BehaviorRelay
+import com.jakewharton.rxrelay.PublishRelay
 import eu.kanade.tachiyomi.data.database.models.Chapter
 import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.download.model.DownloadQueue
 import eu.kanade.tachiyomi.source.Source
 import eu.kanade.tachiyomi.source.model.Page
+import eu.kanade.tachiyomi.util.DiskUtil
+import eu.kanade.tachiyomi.util.StoredZipReader
+import eu.kanade.tachiyomi.util.ZipContentProvider
 import rx.Observable
 
 /**
@@ -17,7 +22,7 @@ import rx.Observable
  *
  * @param context the application context.
  */
-class DownloadManager(context: Context) {
+class DownloadManager(private val context: Context) {
 
     /**
      * Downloads provider, used to retrieve the folders where the chapters are or should be stored.
@@ -29,10 +34,15 @@ class DownloadManager(context: Context) {
      */
     private val cache = DownloadCache(context, provider)
 
+    /**
+     * Statistics of the downloaded images, grouped by source.
+     */
+    val metrics = DownloadMetrics()
+
     /**
      * Downloader whose only task is to download chapters.
      */
-    private val downloader = Downloader(context, provider, cache)
+    private val downloader = Downloader(context, provider, cache, metrics)
 
     /**
      * Downloads queue, where the pending chapters are stored.
@@ -46,6 +56,12 @@ class DownloadManager(context: Context) {
     val runningRelay: BehaviorRelay<Boolean>
         get() = downloader.runningRelay
 
+    /**
+     * Relay that emits when the cache of downloaded chapters has been renewed in the background.
+     */
+    val cacheRenewedRelay: PublishRelay<Unit>
+        get() = cache.renewedRelay
+
     /**
      * Tells the downloader to begin downloads.
      *
@@ -106,25 +122,42 @@ class DownloadManager(context: Context) {
     /**
      * Builds the page list of a downloaded chapter.
      *
-     * @param chapterDir the file where the chapter is downloaded.
+     * @param chapterDir the directory or archive where the chapter is downloaded.
      * @return an observable containing the list of pages from the chapter.
      */
     private fun buildPageList(chapterDir: UniFile?): Observable<List<Page>> {
         return Observable.fromCallable {
-            val files = chapterDir?.listFiles().orEmpty()
-                    .filter { "image" in it.type.orEmpty() }
+            val uris = if (chapterDir != null && chapterDir.isFile) {
+                getArchivePageUris(chapterDir)
+            } else {
+                chapterDir?.listFiles().orEmpty()
+                        .filter { "image" in it.type.orEmpty() }
+                        .sortedBy { it.name }
+                        .map { it.uri }
+            }
 
-            if (files.isEmpty()) {
+            if (uris.isEmpty()) {
                 throw Exception("Page list is empty")
             }
 
-            files.sortedBy { it.name }
-                    .mapIndexed { i, file ->
-                        Page(i, uri = file.uri).apply { status = Page.READY }
-                    }
+            uris.mapIndexed { i, uri ->
+                Page(i, uri = uri).apply { status = Page.READY }
+            }
         }
     }
 
+    /**
+     * Returns the uris of the images of a chapter downloaded as an archive, sorted by name.
+     *
+     * @param archive the archive of the chapter.
+     */
+    private fun getArchivePageUris(archive: UniFile): List<Uri> {
+        return StoredZipReader.readEntries(context, archive.uri)
+                .filter { DiskUtil.isImage(it.name) }
+                .sortedBy { it.name }
+                .map { ZipContentProvider.getStoredEntryUri(archive.uri, it) }
+    }
+
     /**
      * Returns true if the chapter is downloaded.
      *
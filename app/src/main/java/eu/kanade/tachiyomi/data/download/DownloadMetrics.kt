@@ -0,0 +1,196 @@
+package eu.kanade.tachiyomi.data.download
+
+import eu.kanade.tachiyomi.network.ProgressListener
+import eu.kanade.tachiyomi.source.Source
+import okhttp3.Response
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Collects statistics of the images downloaded by [Downloader], grouped by source, so that slow
+ * or failing sources can be spotted. Statistics are kept in memory for the lifetime of the app.
+ *
+ * It's safe to use this class from multiple threads.
+ */
+class DownloadMetrics {
+
+    /**
+     * Statistics of every source that downloaded an image.
+     */
+    private val sources = ConcurrentHashMap<Long, SourceMetrics>()
+
+    /**
+     * Bytes received from all the sources.
+     */
+    private val totalBytes = AtomicLong()
+
+    /**
+     * Bytes received from all the sources since the app started.
+     */
+    val bytesDownloaded: Long
+        get() = totalBytes.get()
+
+    /**
+     * Returns a listener that forwards the progress of an image to [listener] and counts the
+     * bytes received for the given source.
+     *
+     * @param source the source of the image.
+     * @param listener the listener to forward the progress to.
+     * @param offset the amount of bytes of the image already downloaded by a previous attempt.
+     */
+    fun progressListener(source: Source, listener: ProgressListener, offset: Long = 0): ProgressListener {
+        val metrics = getSourceMetrics(source)
+
+        return object : ProgressListener {
+            private var lastBytesRead = offset
+
+            override fun update(bytesRead: Long, contentLength: Long, done: Boolean) {
+                // Progress of a resumed image starts at the offset, unless the server sent the
+                // whole image again.
+                val count = if (bytesRead >= lastBytesRead) bytesRead - lastBytesRead else bytesRead
+                metrics.bytes.addAndGet(count)
+                totalBytes.addAndGet(count)
+                lastBytesRead = bytesRead
+                listener.update(bytesRead, contentLength, done)
+            }
+        }
+    }
+
+    /**
+     * Records an image downloaded successfully.
+     *
+     * @param source the source of the image.
+     * @param response the response of the image.
+     * @param startTime the time in milliseconds when the download of the image started.
+     */
+    fun onImageDownloaded(source: Source, response: Response, startTime: Long) {
+        val metrics = getSourceMetrics(source)
+        val latency = System.currentTimeMillis() - startTime
+
+        metrics.images.incrementAndGet()
+        metrics.timeToFirstByte.addAndGet(response.receivedResponseAtMillis() - response.sentRequestAtMillis())
+        metrics.transferTime.addAndGet(latency)
+
+        val bucket = LATENCY_BUCKETS.indexOfFirst { latency < it }
+        metrics.latencies.incrementAndGet(if (bucket != -1) bucket else LATENCY_BUCKETS.size)
+    }
+
+    /**
+     * Records a failed attempt to download an image.
+     *
+     * @param source the source of the image.
+     */
+    fun onImageError(source: Source) {
+        getSourceMetrics(source).errors.incrementAndGet()
+    }
+
+    /**
+     * Returns a plain text report of the collected statistics, from the slowest to the fastest
+     * source.
+     */
+    fun getReport(): String {
+        val builder = StringBuilder()
+        builder.append("Downloaded: ").append(formatBytes(bytesDownloaded)).append('\n')
+
+        sources.values.sortedBy { it.getBytesPerSecond() }.forEach { metrics ->
+            val images = metrics.images.get()
+            val errors = metrics.errors.get()
+            val attempts = images + errors
+
+            builder.append('\n').append(metrics.name).append('\n')
+            builder.append("  Images: $images, errors: $errors")
+            if (attempts > 0) {
+                builder.append(String.format(Locale.ENGLISH, " (%.1f%%)", 100.0 * errors / attempts))
+            }
+            builder.append('\n')
+            builder.append("  Received: ").append(formatBytes(metrics.bytes.get()))
+                    .append(", speed: ").append(formatBytes(metrics.getBytesPerSecond())).append("/s\n")
+            if (images > 0) {
+                builder.append("  Average time to first byte: ${metrics.timeToFirstByte.get() / images} ms\n")
+                builder.append("  Latency:")
+                for (i in 0..LATENCY_BUCKETS.size) {
+                    val label = if (i < LATENCY_BUCKETS.size) "<${LATENCY_BUCKETS[i]}" else ">=${LATENCY_BUCKETS.last()}"
+                    builder.append(" $label ms: ${metrics.latencies.get(i)}")
+                    if (i < LATENCY_BUCKETS.size) builder.append(',')
+                }
+                builder.append('\n')
+            }
+        }
+        return builder.toString()
+    }
+
+    /**
+     * Returns the statistics of the given source, creating them if needed.
+     *
+     * @param source the source to look for.
+     */
+    private fun getSourceMetrics(source: Source): SourceMetrics {
+        return sources.getOrPut(source.id) { SourceMetrics(source.toString()) }
+    }
+
+    /**
+     * Returns the given amount of bytes in a human readable unit.
+     */
+    private fun formatBytes(bytes: Long): String {
+        if (bytes < 1024) return "$bytes B"
+        val exponent = minOf((Math.log(bytes.toDouble()) / Math.log(1024.0)).toInt(), 3)
+        return String.format(Locale.ENGLISH, "%.1f %sB",
+                bytes / Math.pow(1024.0, exponent.toDouble()), "KMG"[exponent - 1])
+    }
+
+    /**
+     * Statistics of a source.
+     *
+     * @param name the name of the source.
+     */
+    private class SourceMetrics(val name: String) {
+
+        /**
+         * Bytes received.
+         */
+        val bytes = AtomicLong()
+
+        /**
+         * Images downloaded successfully.
+         */
+        val images = AtomicLong()
+
+        /**
+         * Failed attempts to download an image, including the ones retried.
+         */
+        val errors = AtomicLong()
+
+        /**
+         * Sum of the times to first byte of the downloaded images, in milliseconds.
+         */
+        val timeToFirstByte = AtomicLong()
+
+        /**
+         * Sum of the times spent downloading the images, in milliseconds.
+         */
+        val transferTime = AtomicLong()
+
+        /**
+         * Amount of images downloaded within each of [LATENCY_BUCKETS], plus the ones above all.
+         */
+        val latencies = AtomicLongArray(LATENCY_BUCKETS.size + 1)
+
+        /**
+         * Returns the average speed of a single download from this source.
+         */
+        fun getBytesPerSecond(): Long {
+            val time = transferTime.get()
+            return if (time > 0) bytes.get() * 1000 / time else 0
+        }
+    }
+
+    private companion object {
+        /**
+         * Upper bounds in milliseconds of the latency histogram.
+         */
+        val LATENCY_BUCKETS = longArrayOf(250, 500, 1000, 2000, 5000, 10000, 30000)
+    }
+
+}
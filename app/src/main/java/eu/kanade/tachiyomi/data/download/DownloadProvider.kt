@@ -14,6 +14,8 @@ import uy.kohesive.injekt.injectLazy
 /**
  * This class is used to provide the directories where the downloads should be saved.
  * It uses the following path scheme: /<root downloads dir>/<source name>/<manga>/<chapter>
+ * where the chapter is either a directory of images or an uncompressed archive ending in
+ * [CHAPTER_ARCHIVE_EXTENSION].
  *
  * @param context the application context.
  */
@@ -70,15 +72,27 @@ class DownloadProvider(private val context: Context) {
     }
 
     /**
-     * Returns the download directory for a chapter if it exists.
+     * Returns the download directory or archive for a chapter if it exists.
      *
      * @param chapter the chapter to query.
      * @param manga the manga of the chapter.
      * @param source the source of the chapter.
      */
     fun findChapterDir(chapter: Chapter, manga: Manga, source: Source): UniFile? {
-        val mangaDir = findMangaDir(manga, source)
-        return mangaDir?.findFile(getChapterDirName(chapter))
+        val mangaDir = findMangaDir(manga, source) ?: return null
+        return findChapterDir(chapter, mangaDir)
+    }
+
+    /**
+     * Returns the download directory or archive for a chapter in the given manga directory if it
+     * exists.
+     *
+     * @param chapter the chapter to query.
+     * @param mangaDir the download directory of the manga.
+     */
+    fun findChapterDir(chapter: Chapter, mangaDir: UniFile): UniFile? {
+        return mangaDir.findFile(getChapterDirName(chapter))
+                ?: mangaDir.findFile(getChapterArchiveName(chapter))
     }
 
     /**
@@ -108,4 +122,20 @@ class DownloadProvider(private val context: Context) {
         return DiskUtil.buildValidFilename(chapter.name)
     }
 
+    /**
+     * Returns the archive name for a chapter.
+     *
+     * @param chapter the chapter to query.
+     */
+    fun getChapterArchiveName(chapter: Chapter): String {
+        return getChapterDirName(chapter) + CHAPTER_ARCHIVE_EXTENSION
+    }
+
+    companion object {
+        /**
+         * Extension of the chapters downloaded as a single archive.
+         */
+        const val CHAPTER_ARCHIVE_EXTENSION = ".cbz"
+    }
+
 }
\ No newline at end of file
@@ -3,26 +3,40 @@ package eu.kanade.tachiyomi.data.download
 import android.content.Context
 import com.google.gson.Gson
 import eu.kanade.tachiyomi.data.database.DatabaseHelper
-import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.download.model.Download
 import eu.kanade.tachiyomi.source.SourceManager
 import eu.kanade.tachiyomi.source.online.HttpSource
+import rx.Observable
+import rx.schedulers.Schedulers
+import timber.log.Timber
 import uy.kohesive.injekt.injectLazy
+import java.io.File
+import java.io.FileOutputStream
+import java.util.concurrent.TimeUnit
 
 /**
  * This class is used to persist active downloads across application restarts.
  *
+ * Downloads are stored in an append-only journal with one line per change. Changes are buffered
+ * in memory and written together after [FLUSH_DELAY], so that finishing or queueing many chapters
+ * results in a single small write. The journal is truncated every time the store is cleared.
+ *
  * @param context the application context.
  */
 class DownloadStore(context: Context) {
 
     /**
-     * Preference file where active downloads are stored.
+     * File where active downloads are stored.
+     */
+    private val journal = File(context.filesDir, JOURNAL_FILENAME)
+
+    /**
+     * Preference file where active downloads were stored by previous versions of the app.
      */
-    private val preferences = context.getSharedPreferences("active_downloads", Context.MODE_PRIVATE)
+    private val legacyPreferences = context.getSharedPreferences("active_downloads", Context.MODE_PRIVATE)
 
     /**
-     * Gson instance to serialize/deserialize downloads.
+     * Gson instance to deserialize downloads stored by previous versions of the app.
      */
     private val gson: Gson by injectLazy()
 
@@ -37,9 +51,14 @@ class DownloadStore(context: Context) {
     private val db: DatabaseHelper by injectLazy()
 
     /**
-     * Counter used to keep the queue order.
+     * Lines waiting to be written to the journal.
+     */
+    private val pendingLines = mutableListOf<String>()
+
+    /**
+     * Whether a write of the pending lines is already scheduled.
      */
-    private var counter = 0
+    private var isFlushScheduled = false
 
     /**
      * Adds a list of downloads to the store.
@@ -47,9 +66,7 @@ class DownloadStore(context: Context) {
      * @param downloads the list of downloads to add.
      */
     fun addAll(downloads: List<Download>) {
-        val editor = preferences.edit()
-        downloads.forEach { editor.putString(getKey(it), serialize(it)) }
-        editor.apply()
+        write(downloads.map { "$ADD${it.manga.id!!} ${it.chapter.id!!}" })
     }
 
     /**
@@ -58,43 +75,127 @@ class DownloadStore(context: Context) {
      * @param download the download to remove.
      */
     fun remove(download: Download) {
-        preferences.edit().remove(getKey(download)).apply()
+        write(listOf("$REMOVE${download.chapter.id!!}"))
     }
 
     /**
      * Removes all the downloads from the store.
      */
     fun clear() {
-        preferences.edit().clear().apply()
+        write(listOf(CLEAR))
     }
 
     /**
-     * Returns the preference's key for the given download.
+     * Buffers the given lines and schedules a write of the journal if there isn't one pending.
      *
-     * @param download the download.
+     * @param lines the lines to append to the journal.
      */
-    private fun getKey(download: Download): String {
-        return download.chapter.id!!.toString()
+    @Synchronized
+    private fun write(lines: List<String>) {
+        pendingLines += lines
+        if (!isFlushScheduled) {
+            isFlushScheduled = true
+            Observable.timer(FLUSH_DELAY, TimeUnit.MILLISECONDS, Schedulers.io())
+                    .subscribe({ flush() }, { Timber.e(it) })
+        }
     }
 
     /**
-     * Returns the list of downloads to restore. It should be called in a background thread.
+     * Writes the pending lines to the journal. Lines before the last clear are dropped and the
+     * journal is truncated instead of appended.
      */
-    fun restore(): List<Download> {
-        val objs = preferences.all
+    private fun flush() {
+        val lines = synchronized(this) {
+            isFlushScheduled = false
+            pendingLines.toList().also { pendingLines.clear() }
+        }
+
+        val clearIndex = lines.lastIndexOf(CLEAR)
+        synchronized(journal) {
+            try {
+                FileOutputStream(journal, clearIndex == -1).bufferedWriter().use { writer ->
+                    for (i in clearIndex + 1 until lines.size) {
+                        writer.write(lines[i])
+                        writer.newLine()
+                    }
+                }
+            } catch (e: Exception) {
+                Timber.e(e)
+            }
+        }
+    }
+
+    /**
+     * Returns the chapters stored in the journal as pairs of manga and chapter ids, in the order
+     * they were queued.
+     */
+    private fun readJournal(): Collection<Pair<Long, Long>> {
+        // Chapters mapped to their manga. Insertion order is the queue order.
+        val entries = LinkedHashMap<Long, Long>()
+
+        synchronized(journal) {
+            if (!journal.exists()) return emptyList()
+
+            try {
+                journal.forEachLine { line ->
+                    when {
+                        line.startsWith(ADD) -> {
+                            val mangaId = line.substring(ADD.length).substringBefore(' ').toLong()
+                            val chapterId = line.substringAfter(' ').toLong()
+                            entries.remove(chapterId)
+                            entries.put(chapterId, mangaId)
+                        }
+                        line.startsWith(REMOVE) -> entries.remove(line.substring(REMOVE.length).toLong())
+                        line == CLEAR -> entries.clear()
+                    }
+                }
+            } catch (e: Exception) {
+                // A line may be half written if the app was killed, keep what was read until then
+                Timber.e(e)
+            }
+        }
+
+        return entries.map { (chapterId, mangaId) -> mangaId to chapterId }
+    }
+
+    /**
+     * Returns the downloads stored in preferences by previous versions of the app and removes
+     * them from there.
+     */
+    private fun readLegacyPreferences(): List<Pair<Long, Long>> {
+        val objs = legacyPreferences.all
                 .mapNotNull { it.value as? String }
-                .map { deserialize(it) }
+                .map { gson.fromJson(it, DownloadObject::class.java) }
                 .sortedBy { it.order }
 
+        if (objs.isNotEmpty()) {
+            legacyPreferences.edit().clear().apply()
+        }
+        return objs.map { it.mangaId to it.chapterId }
+    }
+
+    /**
+     * Returns the list of downloads to restore. It should be called in a background thread.
+     */
+    fun restore(): List<Download> {
+        val objs = (readLegacyPreferences() + readJournal()).distinctBy { it.second }
+
         val downloads = mutableListOf<Download>()
         if (objs.isNotEmpty()) {
-            val cachedManga = mutableMapOf<Long, Manga?>()
+            val mangas = objs.map { it.first }.distinct()
+                    .chunked(MAX_QUERY_ARGS)
+                    .flatMap { db.getMangas(it).executeAsBlocking() }
+                    .associateBy { it.id!! }
+
+            val chapters = objs.map { it.second }
+                    .chunked(MAX_QUERY_ARGS)
+                    .flatMap { db.getChapters(it).executeAsBlocking() }
+                    .associateBy { it.id!! }
+
             for ((mangaId, chapterId) in objs) {
-                val manga = cachedManga.getOrPut(mangaId) {
-                    db.getManga(mangaId).executeAsBlocking()
-                } ?: continue
+                val manga = mangas[mangaId] ?: continue
                 val source = sourceManager.get(manga.source) as? HttpSource ?: continue
-                val chapter = db.getChapter(chapterId).executeAsBlocking() ?: continue
+                val chapter = chapters[chapterId] ?: continue
                 downloads.add(Download(source, manga, chapter))
             }
         }
@@ -105,26 +206,7 @@ class DownloadStore(context: Context) {
     }
 
     /**
-     * Converts a download to a string.
-     *
-     * @param download the download to serialize.
-     */
-    private fun serialize(download: Download): String {
-        val obj = DownloadObject(download.manga.id!!, download.chapter.id!!, counter++)
-        return gson.toJson(obj)
-    }
-
-    /**
-     * Restore a download from a string.
-     *
-     * @param string the download as string.
-     */
-    private fun deserialize(string: String): DownloadObject {
-        return gson.fromJson(string, DownloadObject::class.java)
-    }
-
-    /**
-     * Class used for download serialization
+     * Class used for download serialization by previous versions of the app.
      *
      * @param mangaId the id of the manga.
      * @param chapterId the id of the chapter.
@@ -132,4 +214,36 @@ class DownloadStore(context: Context) {
      */
     data class DownloadObject(val mangaId: Long, val chapterId: Long, val order: Int)
 
-}
\ No newline at end of file
+    private companion object {
+        /**
+         * Name of the file where active downloads are stored.
+         */
+        const val JOURNAL_FILENAME = "download_queue_journal"
+
+        /**
+         * Time in milliseconds changes are buffered before being written to the journal.
+         */
+        const val FLUSH_DELAY = 500L
+
+        /**
+         * Prefix of the lines of queued chapters, followed by the manga and chapter ids.
+         */
+        const val ADD = "+"
+
+        /**
+         * Prefix of the lines of removed chapters, followed by the chapter id.
+         */
+        const val REMOVE = "-"
+
+        /**
+         * Line written when the queue is cleared.
+         */
+        const val CLEAR = "*"
+
+        /**
+         * Maximum amount of ids looked up in a single query, below the limit of SQLite.
+         */
+        const val MAX_QUERY_ARGS = 500
+    }
+
+}
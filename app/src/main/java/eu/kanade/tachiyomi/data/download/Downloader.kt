@@ -5,10 +5,15 @@ import android.webkit.MimeTypeMap
 import com.hippo.unifile.UniFile
 import com.jakewharton.rxrelay.BehaviorRelay
 import com.jakewharton.rxrelay.PublishRelay
+import eu.kanade.tachiyomi.R
 import eu.kanade.tachiyomi.data.database.models.Chapter
 import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.download.model.Download
 import eu.kanade.tachiyomi.data.download.model.DownloadQueue
+import eu.kanade.tachiyomi.data.preference.PreferencesHelper
+import eu.kanade.tachiyomi.network.ResponseValidators
+import eu.kanade.tachiyomi.network.getRangeStart
+import eu.kanade.tachiyomi.source.SourceCircuitBreaker
 import eu.kanade.tachiyomi.source.SourceManager
 import eu.kanade.tachiyomi.source.model.Page
 import eu.kanade.tachiyomi.source.online.HttpSource
@@ -17,17 +22,22 @@ import eu.kanade.tachiyomi.util.*
 import kotlinx.coroutines.experimental.async
 import okhttp3.Response
 import rx.Observable
+import rx.Subscription
 import rx.android.schedulers.AndroidSchedulers
 import rx.schedulers.Schedulers
 import rx.subscriptions.CompositeSubscription
 import timber.log.Timber
 import uy.kohesive.injekt.injectLazy
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * This class is the one in charge of downloading chapters.
  *
  * Its [queue] contains the list of chapters to download. In order to download them, the downloader
  * subscriptions must be running and the list of chapters must be sent to them by [downloadsRelay].
+ * Chapters are started in queue order, running up to the configured amount of chapters at once
+ * and never exceeding the configured amount of chapters per source.
  *
  * The queue manipulation must be done in one thread (currently the main thread) to avoid unexpected
  * behavior, but it's safe to read it from multiple threads.
@@ -35,11 +45,13 @@ import uy.kohesive.injekt.injectLazy
  * @param context the application context.
  * @param provider the downloads directory provider.
  * @param cache the downloads cache, used to add the downloads to the cache after their completion.
+ * @param metrics the statistics of the downloaded images.
  */
 class Downloader(
         private val context: Context,
         private val provider: DownloadProvider,
-        private val cache: DownloadCache
+        private val cache: DownloadCache,
+        private val metrics: DownloadMetrics
 ) {
 
     /**
@@ -57,6 +69,16 @@ class Downloader(
      */
     private val sourceManager: SourceManager by injectLazy()
 
+    /**
+     * Preferences helper.
+     */
+    private val preferences: PreferencesHelper by injectLazy()
+
+    /**
+     * Circuit breaker used to skip the downloads of sources that keep failing.
+     */
+    private val circuitBreaker: SourceCircuitBreaker by injectLazy()
+
     /**
      * Notifier for the downloader state and progress.
      */
@@ -72,6 +94,18 @@ class Downloader(
      */
     private val downloadsRelay = PublishRelay.create<List<Download>>()
 
+    /**
+     * Downloads received from [downloadsRelay] that haven't been started yet, in queue order. It
+     * must only be accessed from the main thread.
+     */
+    private val pendingDownloads = mutableListOf<Download>()
+
+    /**
+     * Downloads currently running and their subscriptions. It must only be accessed from the main
+     * thread.
+     */
+    private val activeDownloads = mutableMapOf<Download, Subscription>()
+
     /**
      * Relay to subscribe to the downloader status.
      */
@@ -171,16 +205,46 @@ class Downloader(
 
         subscriptions.clear()
 
-        subscriptions += downloadsRelay.concatMapIterable { it }
-                .concatMap { downloadChapter(it).subscribeOn(Schedulers.io()) }
-                .onBackpressureBuffer()
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe({ completeDownload(it)
-                }, { error ->
-                    DownloadService.stop(context)
-                    Timber.e(error)
-                    notifier.onError(error.message)
-                })
+        // The relay is always called from the main thread.
+        subscriptions += downloadsRelay.subscribe { downloads ->
+            pendingDownloads += downloads
+            launchPendingDownloads()
+        }
+    }
+
+    /**
+     * Starts as many pending downloads as allowed by the chapter and per source limits, keeping
+     * the order of the queue. Downloads from a source that reached its limit are skipped until one
+     * of its downloads finishes, so they don't block downloads from other sources. This method
+     * must be called in the main thread.
+     */
+    private fun launchPendingDownloads() {
+        if (!isRunning) return
+
+        val maxChapters = preferences.downloadChapterThreads().coerceAtLeast(1)
+        val maxPerSource = preferences.downloadSourceThreads().coerceAtLeast(1)
+
+        val iterator = pendingDownloads.iterator()
+        while (activeDownloads.size < maxChapters && iterator.hasNext()) {
+            val download = iterator.next()
+            if (activeDownloads.keys.count { it.source.id == download.source.id } >= maxPerSource)
+                continue
+
+            iterator.remove()
+            activeDownloads[download] = downloadChapter(download)
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe({ completed ->
+                        activeDownloads.remove(completed)?.let { subscriptions.remove(it) }
+                        completeDownload(completed)
+                        launchPendingDownloads()
+                    }, { error ->
+                        DownloadService.stop(context)
+                        Timber.e(error)
+                        notifier.onError(error.message)
+                    })
+                    .also { subscriptions += it }
+        }
     }
 
     /**
@@ -192,6 +256,8 @@ class Downloader(
         runningRelay.call(false)
 
         subscriptions.clear()
+        pendingDownloads.clear()
+        activeDownloads.clear()
     }
 
     /**
@@ -212,7 +278,7 @@ class Downloader(
                     // Avoid downloading chapters with the same name.
                     .distinctBy { it.name }
                     // Filter out those already downloaded.
-                    .filter { mangaDir?.findFile(provider.getChapterDirName(it)) == null }
+                    .filter { mangaDir == null || provider.findChapterDir(it, mangaDir) == null }
                     // Add chapters to queue from the start.
                     .sortedByDescending { it.source_order }
         }
@@ -248,9 +314,17 @@ class Downloader(
      * @param download the chapter to be downloaded.
      */
     private fun downloadChapter(download: Download): Observable<Download> = Observable.defer {
+        val sourceId = download.source.id
+        if (!circuitBreaker.allowRequest(sourceId)) {
+            download.status = Download.ERROR
+            notifier.onError(context.getString(R.string.download_notifier_source_unavailable),
+                    download.chapter.name)
+            return@defer Observable.just(download)
+        }
+        download.sourceFailed = false
+
         val chapterDirname = provider.getChapterDirName(download.chapter)
         val mangaDir = provider.getMangaDir(download.manga, download.source)
-        val tmpDir = mangaDir.createDirectory("${chapterDirname}_tmp")
 
         val pageListObservable = if (download.pages == null) {
             // Pull page list from network and add them to download object
@@ -266,33 +340,124 @@ class Downloader(
             Observable.just(download.pages!!)
         }
 
-        pageListObservable
+        val chapterObservable = if (preferences.saveChaptersAsCbz()) {
+            downloadChapterToArchive(download, pageListObservable, mangaDir, chapterDirname)
+        } else {
+            downloadChapterToDirectory(download, pageListObservable, mangaDir, chapterDirname)
+        }
+
+        chapterObservable
+                .doOnNext {
+                    // Missing pages don't count, the source answered.
+                    if (download.status == Download.DOWNLOADED) {
+                        circuitBreaker.onSuccess(sourceId)
+                    } else if (download.sourceFailed) {
+                        circuitBreaker.onFailure(sourceId)
+                    }
+                }
+                // If the page list threw, it will resume here
+                .onErrorReturn { error ->
+                    circuitBreaker.onError(sourceId, error)
+                    download.status = Download.ERROR
+                    notifier.onError(error.message, download.chapter.name)
+                    download
+                }
+    }
+
+    /**
+     * Returns the observable which downloads the pages of a chapter as images in a temporary
+     * directory, renamed to its real name once all the pages are downloaded.
+     *
+     * @param download the chapter to be downloaded.
+     * @param pageListObservable the observable which emits the page list of the chapter.
+     * @param mangaDir the manga directory of the download.
+     * @param chapterDirname the real (non temporary) directory name of the chapter.
+     */
+    private fun downloadChapterToDirectory(download: Download,
+                                           pageListObservable: Observable<List<Page>>,
+                                           mangaDir: UniFile,
+                                           chapterDirname: String): Observable<Download> {
+        val tmpDir = TmpDirectory(mangaDir.createDirectory("${chapterDirname}_tmp"))
+        val pageThreads = preferences.downloadPageThreads().coerceAtLeast(1)
+
+        return pageListObservable
                 .doOnNext { _ ->
-                    // Delete all temporary (unfinished) files
-                    tmpDir.listFiles()
-                            ?.filter { it.name!!.endsWith(".tmp") }
-                            ?.forEach { it.delete() }
+                    // Index the downloaded and the unfinished images
+                    tmpDir.index()
 
                     download.downloadedImages = 0
                     download.status = Download.DOWNLOADING
                 }
                 // Get all the URLs to the source images, fetch pages if necessary
                 .flatMap { download.source.fetchAllImageUrlsFromPageList(it) }
-                // Start downloading images, consider we can have downloaded images already
-                .concatMap { page -> getOrDownloadImage(page, download, tmpDir) }
+                // Start downloading images, consider we can have downloaded images already.
+                // Pages are saved by their number, so they can be downloaded in any order.
+                .flatMap({ page ->
+                    getOrDownloadImage(page, download, tmpDir)
+                            .subscribeOn(Schedulers.io())
+                }, pageThreads)
                 // Do when page is downloaded.
                 .doOnNext { notifier.onProgressChange(download) }
                 .toList()
                 .map { _ -> download }
                 // Do after download completes
-                .doOnNext { ensureSuccessfulDownload(download, mangaDir, tmpDir, chapterDirname) }
-                // If the page list threw, it will resume here
-                .onErrorReturn { error ->
-                    download.status = Download.ERROR
-                    notifier.onError(error.message, download.chapter.name)
-                    download
+                .doOnNext {
+                    ensureSuccessfulDownload(download, tmpDir, chapterDirname)
                 }
+    }
 
+    /**
+     * Returns the observable which downloads the pages of a chapter to a single uncompressed
+     * archive, written to a temporary file and renamed once all the pages are downloaded. Unlike
+     * directories, unfinished archives can't be resumed, so they're downloaded from the start.
+     *
+     * @param download the chapter to be downloaded.
+     * @param pageListObservable the observable which emits the page list of the chapter.
+     * @param mangaDir the manga directory of the download.
+     * @param chapterDirname the real (non temporary) directory name of the chapter.
+     */
+    private fun downloadChapterToArchive(download: Download,
+                                         pageListObservable: Observable<List<Page>>,
+                                         mangaDir: UniFile,
+                                         chapterDirname: String): Observable<Download> {
+        val tmpName = "${chapterDirname}_tmp${DownloadProvider.CHAPTER_ARCHIVE_EXTENSION}"
+        val pageThreads = preferences.downloadPageThreads().coerceAtLeast(1)
+
+        return pageListObservable
+                .doOnNext { _ ->
+                    download.downloadedImages = 0
+                    download.status = Download.DOWNLOADING
+                }
+                .flatMap { pages ->
+                    Observable.using<Download, Pair<UniFile, StoredZipWriter>>({
+                        // Delete the unfinished archive of a previous attempt
+                        mangaDir.findFile(tmpName)?.delete()
+                        val tmpFile = mangaDir.createFile(tmpName)
+                        tmpFile to StoredZipWriter(tmpFile.openOutputStream())
+                    }, { (tmpFile, archive) ->
+                        // Get all the URLs to the source images, fetch pages if necessary
+                        download.source.fetchAllImageUrlsFromPageList(pages)
+                                // Start downloading images straight into the archive
+                                .flatMap({ page ->
+                                    downloadImageToArchive(page, download, archive)
+                                            .subscribeOn(Schedulers.io())
+                                }, pageThreads)
+                                // Do when page is downloaded.
+                                .doOnNext { notifier.onProgressChange(download) }
+                                .toList()
+                                .map { _ -> download }
+                                // Do after download completes
+                                .doOnNext {
+                                    ensureSuccessfulArchive(download, tmpFile, archive, chapterDirname)
+                                }
+                    }, { (_, archive) ->
+                        // Make sure the file is released if the download failed or was stopped
+                        try {
+                            archive.close()
+                        } catch (e: Exception) {
+                        }
+                    })
+                }
     }
 
     /**
@@ -303,19 +468,16 @@ class Downloader(
      * @param download the download of the page.
      * @param tmpDir the temporary directory of the download.
      */
-    private fun getOrDownloadImage(page: Page, download: Download, tmpDir: UniFile): Observable<Page> {
+    private fun getOrDownloadImage(page: Page, download: Download,
+                                   tmpDir: TmpDirectory): Observable<Page> {
         // If the image URL is empty, do nothing
         if (page.imageUrl == null)
             return Observable.just(page)
 
         val filename = String.format("%03d", page.number)
-        val tmpFile = tmpDir.findFile("$filename.tmp")
-
-        // Delete temp file if it exists.
-        tmpFile?.delete()
 
         // Try to find the image file.
-        val imageFile = tmpDir.listFiles()!!.find { it.name!!.startsWith("$filename.") }
+        val imageFile = tmpDir.images[filename]
 
         // If the image is already downloaded, do nothing. Otherwise download from network
         val pageObservable = if (imageFile != null)
@@ -326,14 +488,17 @@ class Downloader(
         return pageObservable
                 // When the image is ready, set image path, progress (just in case) and status
                 .doOnNext { file ->
+                    tmpDir.images[filename] = file
                     page.uri = file.uri
                     page.progress = 100
-                    download.downloadedImages++
+                    // Pages of the same chapter may complete concurrently.
+                    synchronized(download) { download.downloadedImages++ }
                     page.status = Page.READY
                 }
                 .map { page }
                 // Mark this page as error and allow to download the remaining
-                .onErrorReturn {
+                .onErrorReturn { error ->
+                    if (SourceCircuitBreaker.isSourceFailure(error)) download.sourceFailed = true
                     page.progress = 0
                     page.status = Page.ERROR
                     page
@@ -348,25 +513,124 @@ class Downloader(
      * @param tmpDir the temporary directory of the download.
      * @param filename the filename of the image.
      */
-    private fun downloadImage(page: Page, source: HttpSource, tmpDir: UniFile, filename: String): Observable<UniFile> {
+    private fun downloadImage(page: Page, source: HttpSource, tmpDir: TmpDirectory, filename: String): Observable<UniFile> {
+        page.status = Page.DOWNLOAD_IMAGE
+        page.progress = 0
+        return Observable.defer {
+            // Resume the unfinished file of a previous attempt if there's any, but only if the
+            // server can tell whether the image changed since then.
+            val partialFile = tmpDir.partials[filename]
+            val validator = tmpDir.getValidator(filename)
+            val offset = if (validator != null) partialFile?.length() ?: 0L else 0L
+            val startTime = System.currentTimeMillis()
+
+            source.fetchImage(page, offset, metrics.progressListener(source, page, offset), validator)
+                    .map { response ->
+                        // Append only if the server sent the requested range, otherwise start again.
+                        val resume = offset > 0 && response.code() == 206 &&
+                                response.getRangeStart() == offset
+                        val file = partialFile ?: tmpDir.dir.createFile("$filename.tmp")
+                        tmpDir.partials[filename] = file
+                        if (!resume) {
+                            tmpDir.setValidator(filename, ResponseValidators.from(response)?.rangeValidator)
+                        }
+                        try {
+                            response.body()!!.source().saveTo(file.openOutputStream(resume))
+                            val extension = getImageExtension(response, file)
+                            file.renameTo("$filename.$extension")
+                            tmpDir.partials.remove(filename)
+                            tmpDir.setValidator(filename, null)
+                        } catch (e: Exception) {
+                            // Keep the unfinished file, the next attempt will resume it.
+                            response.close()
+                            throw e
+                        }
+                        metrics.onImageDownloaded(source, response, startTime)
+                        file
+                    }
+                    .doOnError { metrics.onImageError(source) }
+        }
+                // Retry 3 times, waiting 2, 4 and 8 seconds between attempts.
+                .retryWhen(RetryWithDelay(3, { (2 shl it - 1) * 1000 }, Schedulers.trampoline()))
+    }
+
+    /**
+     * Returns the observable which downloads the image from network and adds it to the archive of
+     * its chapter. If the archive can't be written, the observable fails to abort the chapter.
+     *
+     * @param page the page to download.
+     * @param download the download of the page.
+     * @param archive the archive where the image is added.
+     */
+    private fun downloadImageToArchive(page: Page, download: Download,
+                                       archive: StoredZipWriter): Observable<Page> {
+        // If the image URL is empty, do nothing
+        if (page.imageUrl == null)
+            return Observable.just(page)
+
+        val filename = String.format("%03d", page.number)
+
         page.status = Page.DOWNLOAD_IMAGE
         page.progress = 0
-        return source.fetchImage(page)
-                .map { response ->
-                    val file = tmpDir.createFile("$filename.tmp")
+        val source = download.source
+        val imageObservable = Observable.defer {
+            val startTime = System.currentTimeMillis()
+
+            source.fetchImage(page, 0, metrics.progressListener(source, page))
+                    .map { response ->
+                        // Save the image to a local file first, the archive needs its checksum
+                        // before its content.
+                        val file = File.createTempFile("page", null, context.cacheDir)
+                        val extension = try {
+                            response.body()!!.source().saveTo(file)
+                            getImageExtension(response, file)
+                        } catch (e: Exception) {
+                            response.close()
+                            file.delete()
+                            throw e
+                        }
+                        metrics.onImageDownloaded(source, response, startTime)
+                        file to extension
+                    }
+                    .doOnError { metrics.onImageError(source) }
+        }
+                // Retry 3 times, waiting 2, 4 and 8 seconds between attempts.
+                .retryWhen(RetryWithDelay(3, { (2 shl it - 1) * 1000 }, Schedulers.trampoline()))
+
+        return Observable.defer {
+            // Don't fetch the remaining pages if the archive can't be written anymore
+            if (archive.isBroken) {
+                Observable.error<Pair<File, String>>(
+                        IllegalStateException("The archive is broken by a failed entry"))
+            } else {
+                imageObservable
+            }
+        }
+                // Writing to the archive isn't retried, a failed entry leaves it broken
+                .map { (file, extension) ->
                     try {
-                        response.body()!!.source().saveTo(file.openOutputStream())
-                        val extension = getImageExtension(response, file)
-                        file.renameTo("$filename.$extension")
-                    } catch (e: Exception) {
-                        response.close()
+                        archive.addEntry("$filename.$extension", file)
+                    } finally {
                         file.delete()
-                        throw e
                     }
-                    file
                 }
-                // Retry 3 times, waiting 2, 4 and 8 seconds between attempts.
-                .retryWhen(RetryWithDelay(3, { (2 shl it - 1) * 1000 }, Schedulers.trampoline()))
+                // When the image is ready, set progress and status
+                .doOnNext { _ ->
+                    page.progress = 100
+                    synchronized(download) { download.downloadedImages++ }
+                    page.status = Page.READY
+                }
+                .map { page }
+                // Mark this page as error and allow to download the remaining, unless the archive
+                // is broken, then the error aborts the whole chapter.
+                .onErrorResumeNext { error ->
+                    if (archive.isBroken) return@onErrorResumeNext Observable.error<Page>(error)
+
+                    if (SourceCircuitBreaker.isSourceFailure(error)) download.sourceFailed = true
+                    page.progress = 0
+                    page.status = Page.ERROR
+                    Observable.just(page)
+                }
     }
 
     /**
@@ -387,21 +651,34 @@ class Downloader(
         return MimeTypeMap.getSingleton().getExtensionFromMimeType(mime) ?: "jpg"
     }
 
+    /**
+     * Returns the extension of the downloaded image from the network response, or if it's null,
+     * analyze its content. If everything fails, assume it's a jpg.
+     *
+     * @param response the network response of the image.
+     * @param file the local file where the image is downloaded.
+     */
+    private fun getImageExtension(response: Response, file: File): String {
+        // Read content type if available.
+        val mime = response.body()?.contentType()?.let { ct -> "${ct.type()}/${ct.subtype()}" }
+            // Else read magic numbers.
+            ?: DiskUtil.findImageMime { file.inputStream() }
+
+        return MimeTypeMap.getSingleton().getExtensionFromMimeType(mime) ?: "jpg"
+    }
+
     /**
      * Checks if the download was successful.
      *
      * @param download the download to check.
-     * @param mangaDir the manga directory of the download.
      * @param tmpDir the directory where the download is currently stored.
      * @param dirname the real (non temporary) directory name of the download.
      */
-    private fun ensureSuccessfulDownload(download: Download, mangaDir: UniFile,
-                                         tmpDir: UniFile, dirname: String) {
+    private fun ensureSuccessfulDownload(download: Download, tmpDir: TmpDirectory,
+                                         dirname: String) {
 
         // Ensure that the chapter folder has all the images.
-        val downloadedImages = tmpDir.listFiles().orEmpty().filterNot { it.name!!.endsWith(".tmp") }
-
-        download.status = if (downloadedImages.size == download.pages!!.size) {
+        download.status = if (tmpDir.images.size == download.pages!!.size) {
             Download.DOWNLOADED
         } else {
             Download.ERROR
@@ -409,8 +686,35 @@ class Downloader(
 
         // Only rename the directory if it's downloaded.
         if (download.status == Download.DOWNLOADED) {
-            tmpDir.renameTo(dirname)
-            cache.addChapter(dirname, mangaDir, download.manga)
+            tmpDir.dir.renameTo(dirname)
+            cache.addChapter(dirname, download.manga)
+        }
+    }
+
+    /**
+     * Checks if the download of a chapter archive was successful.
+     *
+     * @param download the download to check.
+     * @param tmpFile the file where the archive is currently stored.
+     * @param archive the archive of the download.
+     * @param dirname the real (non temporary) directory name of the download.
+     */
+    private fun ensureSuccessfulArchive(download: Download, tmpFile: UniFile,
+                                        archive: StoredZipWriter, dirname: String) {
+        // Write the central directory, the archive can't be read until then.
+        archive.close()
+
+        // Ensure that the archive has all the images.
+        download.status = if (archive.entryCount == download.pages!!.size) {
+            Download.DOWNLOADED
+        } else {
+            Download.ERROR
+        }
+
+        // Only rename the archive if it's downloaded.
+        if (download.status == Download.DOWNLOADED) {
+            tmpFile.renameTo(dirname + DownloadProvider.CHAPTER_ARCHIVE_EXTENSION)
+            cache.addChapter(dirname, download.manga)
         }
     }
 
@@ -438,4 +742,79 @@ class Downloader(
         return queue.none { it.status <= Download.DOWNLOADING }
     }
 
+    /**
+     * The temporary directory of a chapter being downloaded, along with an index of its files to
+     * avoid listing it for every page. The index is safe to use from multiple threads.
+     *
+     * @param dir the temporary directory.
+     */
+    private class TmpDirectory(val dir: UniFile) {
+
+        /**
+         * Downloaded images, keyed by filename without extension.
+         */
+        val images = ConcurrentHashMap<String, UniFile>()
+
+        /**
+         * Unfinished images that can be resumed, keyed by filename without extension.
+         */
+        val partials = ConcurrentHashMap<String, UniFile>()
+
+        /**
+         * Files with the validator of each unfinished image, keyed by filename without extension.
+         */
+        private val validators = ConcurrentHashMap<String, UniFile>()
+
+        /**
+         * Lists the directory and fills the index.
+         */
+        fun index() {
+            images.clear()
+            partials.clear()
+            validators.clear()
+            dir.listFiles()?.forEach { file ->
+                val name = file.name ?: return@forEach
+                when {
+                    name.endsWith(".tmp") -> partials[name.substringBefore('.')] = file
+                    name.endsWith(VALIDATOR_EXTENSION) -> validators[name.substringBefore('.')] = file
+                    else -> images[name.substringBefore('.')] = file
+                }
+            }
+        }
+
+        /**
+         * Returns the validator of the unfinished image with the given filename, if it's known.
+         *
+         * @param filename the filename of the image without extension.
+         */
+        fun getValidator(filename: String): String? {
+            val file = validators[filename] ?: return null
+            return try {
+                file.openInputStream().use { it.reader().readText() }.takeIf { it.isNotEmpty() }
+            } catch (e: Exception) {
+                null
+            }
+        }
+
+        /**
+         * Stores the validator of the unfinished image with the given filename, or removes it if
+         * it's null.
+         *
+         * @param filename the filename of the image without extension.
+         * @param validator the validator of the response being written to the unfinished image.
+         */
+        fun setValidator(filename: String, validator: String?) {
+            validators.remove(filename)?.delete()
+            if (validator == null) return
+
+            val file = dir.createFile("$filename$VALIDATOR_EXTENSION")
+            file.openOutputStream().use { it.write(validator.toByteArray()) }
+            validators[filename] = file
+        }
+
+        private companion object {
+            const val VALIDATOR_EXTENSION = ".validator"
+        }
+    }
+
 }
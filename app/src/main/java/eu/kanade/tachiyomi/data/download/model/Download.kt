@@ -14,6 +14,11 @@ class Download(val source: HttpSource, val manga: Manga, val chapter: Chapter) {
 
     @Volatile @Transient var downloadedImages: Int = 0
 
+    /**
+     * Whether a page failed because the source is down, like a network error or a server error.
+     */
+    @Volatile @Transient var sourceFailed: Boolean = false
+
     @Volatile @Transient var status: Int = 0
         set(status) {
             field = status
@@ -6,6 +6,7 @@ import eu.kanade.tachiyomi.data.download.DownloadStore
 import eu.kanade.tachiyomi.source.model.Page
 import rx.Observable
 import rx.subjects.PublishSubject
+import rx.subjects.Subject
 import java.util.concurrent.CopyOnWriteArrayList
 
 class DownloadQueue(
@@ -63,7 +64,8 @@ class DownloadQueue(
                 .startWith(getActiveDownloads())
                 .flatMap { download ->
                     if (download.status == Download.DOWNLOADING) {
-                        val pageStatusSubject = PublishSubject.create<Int>()
+                        // Pages may be downloaded in parallel, serialize their emissions.
+                        val pageStatusSubject = PublishSubject.create<Int>().toSerialized()
                         setPagesSubject(download.pages, pageStatusSubject)
                         return@flatMap pageStatusSubject
                                 .onBackpressureBuffer()
@@ -78,7 +80,7 @@ class DownloadQueue(
                 .filter { it.status == Download.DOWNLOADING }
     }
 
-    private fun setPagesSubject(pages: List<Page>?, subject: PublishSubject<Int>?) {
+    private fun setPagesSubject(pages: List<Page>?, subject: Subject<Int, Int>?) {
         if (pages != null) {
             for (page in pages) {
                 page.setStatusSubject(subject)
@@ -0,0 +1,117 @@
+package eu.kanade.tachiyomi.data.library
+
+import android.content.Context
+import eu.kanade.tachiyomi.data.database.models.Manga
+import eu.kanade.tachiyomi.network.ResponseValidators
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Stores the state of the last chapter list fetched for every manga of the library, so that the
+ * next update can tell whether it changed.
+ *
+ * Changes are kept in memory and written together by [save]. It's safe to use this class from
+ * multiple threads.
+ *
+ * @param context the application context.
+ */
+class ChapterListStore(context: Context) {
+
+    /**
+     * Preference file where the states are stored.
+     */
+    private val preferences = context.getSharedPreferences("chapter_list_store", Context.MODE_PRIVATE)
+
+    /**
+     * Validators waiting to be saved, or an empty value if they have to be removed.
+     */
+    private val pendingValidators = ConcurrentHashMap<Long, ResponseValidators>()
+
+    /**
+     * Digests waiting to be saved, or an empty string if they have to be removed.
+     */
+    private val pendingDigests = ConcurrentHashMap<Long, String>()
+
+    /**
+     * Returns the validators of the last chapter list response of the given manga.
+     *
+     * @param manga the manga to look for.
+     */
+    fun getValidators(manga: Manga): ResponseValidators? {
+        val validators = pendingValidators[manga.id!!] ?: ResponseValidators(
+                preferences.getString("${manga.id}$ETAG", null),
+                preferences.getString("${manga.id}$LAST_MODIFIED", null))
+
+        return if (validators != EMPTY_VALIDATORS) validators else null
+    }
+
+    /**
+     * Sets the validators of the last chapter list response of the given manga.
+     *
+     * @param manga the manga to update.
+     * @param validators the validators of the response, or null if it didn't have any.
+     */
+    fun setValidators(manga: Manga, validators: ResponseValidators?) {
+        pendingValidators.put(manga.id!!, validators ?: EMPTY_VALIDATORS)
+    }
+
+    /**
+     * Returns the digest of the last chapter list synced for the given manga.
+     *
+     * @param manga the manga to look for.
+     */
+    fun getDigest(manga: Manga): String? {
+        val digest = pendingDigests[manga.id!!] ?: preferences.getString("${manga.id}$DIGEST", null)
+        return if (digest.isNullOrEmpty()) null else digest
+    }
+
+    /**
+     * Sets the digest of the last chapter list synced for the given manga.
+     *
+     * @param manga the manga to update.
+     * @param digest the digest of the chapter list, or null to remove it.
+     */
+    fun setDigest(manga: Manga, digest: String?) {
+        pendingDigests.put(manga.id!!, digest.orEmpty())
+    }
+
+    /**
+     * Saves the changes made since the last call.
+     */
+    @Synchronized
+    fun save() {
+        if (pendingValidators.isEmpty() && pendingDigests.isEmpty()) return
+
+        val editor = preferences.edit()
+        pendingDigests.keys.toList().forEach { id ->
+            val digest = pendingDigests.remove(id) ?: return@forEach
+            if (digest.isNotEmpty()) {
+                editor.putString("$id$DIGEST", digest)
+            } else {
+                editor.remove("$id$DIGEST")
+            }
+        }
+        pendingValidators.keys.toList().forEach { id ->
+            val validators = pendingValidators.remove(id) ?: return@forEach
+            if (validators.etag != null) {
+                editor.putString("$id$ETAG", validators.etag)
+            } else {
+                editor.remove("$id$ETAG")
+            }
+            if (validators.lastModified != null) {
+                editor.putString("$id$LAST_MODIFIED", validators.lastModified)
+            } else {
+                editor.remove("$id$LAST_MODIFIED")
+            }
+        }
+        editor.apply()
+    }
+
+    private companion object {
+        const val ETAG = "_etag"
+        const val LAST_MODIFIED = "_last_modified"
+        const val DIGEST = "_digest"
+
+        val EMPTY_VALIDATORS = ResponseValidators(null, null)
+    }
+
+}
@@ -0,0 +1,97 @@
+package eu.kanade.tachiyomi.data.library
+
+import android.content.Context
+import eu.kanade.tachiyomi.data.database.models.LibraryManga
+
+/**
+ * Stores the manga already updated by a running [LibraryUpdateService], so that an update stopped
+ * by the system can continue where it was instead of updating the whole library again.
+ *
+ * @param context the application context.
+ */
+class LibraryUpdateCheckpoint(context: Context) {
+
+    /**
+     * Preference file where the checkpoint is stored.
+     */
+    private val preferences = context.getSharedPreferences("library_update_checkpoint", Context.MODE_PRIVATE)
+
+    /**
+     * Ids of the manga updated by the current update.
+     */
+    private val doneIds = HashSet<Long>()
+
+    /**
+     * Whether there are updated manga waiting to be saved.
+     */
+    private var hasPendingIds = false
+
+    /**
+     * Starts a new checkpoint for the given update, unless [resume] is true and there's a
+     * checkpoint of the same update that progressed within [maxAge], in which case it continues.
+     *
+     * @param key the key identifying the update, like its target and category.
+     * @param resume whether the previous checkpoint can be used.
+     * @param maxAge the maximum time in milliseconds since the previous checkpoint was saved.
+     * @return the ids of the manga already updated.
+     */
+    @Synchronized
+    fun start(key: String, resume: Boolean, maxAge: Long): Set<Long> {
+        doneIds.clear()
+        hasPendingIds = false
+
+        val elapsed = System.currentTimeMillis() - preferences.getLong(KEY_SAVED, 0)
+        if (resume && maxAge > 0 && elapsed in 0..maxAge && preferences.getString(KEY_UPDATE, null) == key) {
+            preferences.getStringSet(KEY_DONE, emptySet()).mapTo(doneIds) { it.toLong() }
+        } else {
+            preferences.edit()
+                    .clear()
+                    .putString(KEY_UPDATE, key)
+                    .putLong(KEY_SAVED, System.currentTimeMillis())
+                    .apply()
+        }
+        return doneIds.toSet()
+    }
+
+    /**
+     * Records that the given manga were updated. They're stored on the next call to [save].
+     *
+     * @param mangaList the updated manga.
+     */
+    @Synchronized
+    fun setDone(mangaList: List<LibraryManga>) {
+        mangaList.forEach { doneIds.add(it.id!!) }
+        hasPendingIds = hasPendingIds || mangaList.isNotEmpty()
+    }
+
+    /**
+     * Saves the manga updated since the last call and the time of the progress.
+     */
+    @Synchronized
+    fun save() {
+        if (!hasPendingIds) return
+
+        preferences.edit()
+                .putStringSet(KEY_DONE, doneIds.mapTo(HashSet()) { it.toString() })
+                .putLong(KEY_SAVED, System.currentTimeMillis())
+                .apply()
+        hasPendingIds = false
+    }
+
+    /**
+     * Removes the checkpoint, once the update is completed.
+     */
+    @Synchronized
+    fun clear() {
+        doneIds.clear()
+        hasPendingIds = false
+        preferences.edit().clear().apply()
+    }
+
+    private companion object {
+        const val KEY_UPDATE = "update"
+        const val KEY_DONE = "done"
+        const val KEY_SAVED = "saved"
+    }
+
+}
@@ -0,0 +1,21 @@
+package eu.kanade.tachiyomi.data.library
+
+import eu.kanade.tachiyomi.data.database.models.Chapter
+import eu.kanade.tachiyomi.data.database.models.LibraryManga
+
+/**
+ * Result of updating the chapters of a single manga, published by [LibraryUpdateService] as soon
+ * as the manga is done so that the UI can apply it without querying the whole library again.
+ *
+ * @param manga the updated manga.
+ * @param newChapters the chapters inserted in the database.
+ * @param unreadDelta the change in the amount of unread chapters of the manga.
+ * @param error the error of the update, if it failed.
+ * @param batch the number of the batch where the chapters were written, or 0 if nothing was
+ * written. See [LibraryUpdateService.queryWithBatch].
+ */
+data class LibraryUpdateEvent(val manga: LibraryManga,
+                              val newChapters: List<Chapter> = emptyList(),
+                              val unreadDelta: Int = 0,
+                              val error: Throwable? = null,
+                              val batch: Long = 0)
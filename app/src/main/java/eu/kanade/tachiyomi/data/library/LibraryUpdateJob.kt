@@ -11,7 +11,7 @@ import uy.kohesive.injekt.api.get
 class LibraryUpdateJob : Job() {
 
     override fun onRunJob(params: Params): Result {
-        LibraryUpdateService.start(context)
+        LibraryUpdateService.start(context, scheduled = true)
         return Job.Result.SUCCESS
     }
 
@@ -10,12 +10,18 @@ import android.os.Build
 import android.os.IBinder
 import android.os.PowerManager
 import android.support.v4.app.NotificationCompat
+import com.jakewharton.rxrelay.BehaviorRelay
+import com.jakewharton.rxrelay.PublishRelay
+import com.jakewharton.rxrelay.Relay
+import com.pushtorefresh.storio.sqlite.Changes
 import eu.kanade.tachiyomi.R
 import eu.kanade.tachiyomi.data.database.DatabaseHelper
 import eu.kanade.tachiyomi.data.database.models.Category
 import eu.kanade.tachiyomi.data.database.models.Chapter
 import eu.kanade.tachiyomi.data.database.models.LibraryManga
 import eu.kanade.tachiyomi.data.database.models.Manga
+import eu.kanade.tachiyomi.data.database.tables.ChapterTable
+import eu.kanade.tachiyomi.data.database.tables.MangaTable
 import eu.kanade.tachiyomi.data.download.DownloadManager
 import eu.kanade.tachiyomi.data.download.DownloadService
 import eu.kanade.tachiyomi.data.library.LibraryUpdateService.Companion.start
@@ -24,7 +30,10 @@ import eu.kanade.tachiyomi.data.notification.Notifications
 import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import eu.kanade.tachiyomi.data.preference.getOrDefault
 import eu.kanade.tachiyomi.data.track.TrackManager
+import eu.kanade.tachiyomi.network.ResponseValidators
+import eu.kanade.tachiyomi.source.SourceCircuitBreaker
 import eu.kanade.tachiyomi.source.SourceManager
+import eu.kanade.tachiyomi.source.model.SChapter
 import eu.kanade.tachiyomi.source.model.SManga
 import eu.kanade.tachiyomi.source.online.HttpSource
 import eu.kanade.tachiyomi.ui.main.MainActivity
@@ -32,11 +41,16 @@ import eu.kanade.tachiyomi.util.*
 import rx.Observable
 import rx.Subscription
 import rx.schedulers.Schedulers
+import rx.subjects.UnicastSubject
 import timber.log.Timber
 import uy.kohesive.injekt.Injekt
 import uy.kohesive.injekt.api.get
 import java.util.*
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 /**
  * This class will take care of updating the chapters of the manga from the library. It can be
@@ -51,7 +65,8 @@ class LibraryUpdateService(
         val sourceManager: SourceManager = Injekt.get(),
         val preferences: PreferencesHelper = Injekt.get(),
         val downloadManager: DownloadManager = Injekt.get(),
-        val trackManager: TrackManager = Injekt.get()
+        val trackManager: TrackManager = Injekt.get(),
+        val circuitBreaker: SourceCircuitBreaker = Injekt.get()
 ) : Service() {
 
     /**
@@ -64,6 +79,21 @@ class LibraryUpdateService(
      */
     private var subscription: Subscription? = null
 
+    /**
+     * Release cadence of the manga, used to skip the ones without expected chapters.
+     */
+    private val releaseCadence by lazy { ReleaseCadence(this) }
+
+    /**
+     * State of the last fetched chapter lists, used to request them conditionally.
+     */
+    private val chapterListStore by lazy { ChapterListStore(this) }
+
+    /**
+     * Manga already updated, used to continue an update stopped by the system.
+     */
+    private val checkpoint by lazy { LibraryUpdateCheckpoint(this) }
+
     /**
      * Pending intent of action that cancels the library update
      */
@@ -111,6 +141,124 @@ class LibraryUpdateService(
          */
         const val KEY_TARGET = "target"
 
+        /**
+         * Key that defines whether the update was started by [LibraryUpdateJob].
+         */
+        const val KEY_SCHEDULED = "scheduled"
+
+        /**
+         * Maximum time in milliseconds chapter lists are held before writing them to the database.
+         */
+        private const val BATCH_TIMESPAN = 2000L
+
+        /**
+         * Maximum amount of manga whose chapters are written in a single transaction.
+         */
+        private const val BATCH_SIZE = 25
+
+        /**
+         * Relay used to know when the service is running.
+         */
+        val runningRelay: BehaviorRelay<Boolean> = BehaviorRelay.create(false)
+
+        /**
+         * Relay where the result of every updated manga is published, as soon as its chapters are
+         * written to the database.
+         */
+        val updateRelay: Relay<LibraryUpdateEvent, LibraryUpdateEvent> =
+                PublishRelay.create<LibraryUpdateEvent>().toSerialized()
+
+        /**
+         * Tag of the database changes made when writing the chapters of the updated manga.
+         */
+        const val DB_CHANGES_TAG = "library_update"
+
+        /**
+         * Lock held while a batch of chapters is written, and while a query needs to know which
+         * batches it includes.
+         */
+        private val batchLock = ReentrantReadWriteLock()
+
+        /**
+         * Number of the last batch of chapters written to the database.
+         */
+        private var lastBatch = 0L
+
+        /**
+         * Runs the given database query and returns its result with the number of the last batch
+         * of chapters it includes. Results published to [updateRelay] with a greater
+         * [LibraryUpdateEvent.batch] aren't included yet.
+         *
+         * @param query the query to run.
+         */
+        fun <T> queryWithBatch(query: () -> T): Pair<T, Long> {
+            return batchLock.read { query() to lastBatch }
+        }
+
+        /**
+         * Returns an observable with the result of the given query, run again on every change to
+         * the given tables. While the library is updating, the results published to [updateRelay]
+         * are applied to the last result instead of running the query again after every batch of
+         * chapters. Any other change to the tables runs the query again.
+         *
+         * @param db the database helper.
+         * @param tables the tables read by the query.
+         * @param query the query to run.
+         * @param apply returns a new result with the given update applied. It must not modify the
+         * given result.
+         */
+        fun <T> observeWithUpdates(db: DatabaseHelper, tables: Set<String>, query: () -> T,
+                                   apply: (T, LibraryUpdateEvent) -> T): Observable<T> {
+            val changes = db.db.observeChangesInTables(tables)
+
+            return runningRelay.distinctUntilChanged().switchMap { running ->
+                val triggers = if (running) {
+                    changes.filter { DB_CHANGES_TAG !in it.affectedTags() }
+                } else {
+                    changes
+                }
+                triggers.map { Unit }
+                        .startWith(Unit)
+                        .onBackpressureLatest()
+                        .switchMap {
+                            val result = if (running) {
+                                queryWithUpdates(query, apply)
+                            } else {
+                                Observable.fromCallable { query() }
+                            }
+                            result.subscribeOn(Schedulers.io())
+                        }
+            }
+        }
+
+        /**
+         * Returns an observable that runs the given query and then applies to its result every
+         * update published to [updateRelay] that the query didn't include.
+         *
+         * @param query the query to run.
+         * @param apply returns a new result with the given update applied.
+         */
+        private fun <T> queryWithUpdates(query: () -> T,
+                                         apply: (T, LibraryUpdateEvent) -> T): Observable<T> {
+            return Observable.defer {
+                // Hold the updates published while the query runs.
+                val events = UnicastSubject.create<LibraryUpdateEvent>()
+                val subscription = updateRelay.subscribe(events)
+
+                val (result, batch) = try {
+                    queryWithBatch(query)
+                } catch (e: Exception) {
+                    subscription.unsubscribe()
+                    throw e
+                }
+
+                events.filter { it.batch > batch }
+                        .onBackpressureBuffer()
+                        .scan(result, apply)
+                        .doOnUnsubscribe { subscription.unsubscribe() }
+            }
+        }
+
         /**
          * Returns the status of the service.
          *
@@ -128,11 +276,15 @@ class LibraryUpdateService(
          * @param context the application context.
          * @param category a specific category to update, or null for global update.
          * @param target defines what should be updated.
+         * @param scheduled whether the update is a periodic one, which may skip the manga without
+         * expected chapters.
          */
-        fun start(context: Context, category: Category? = null, target: Target = Target.CHAPTERS) {
+        fun start(context: Context, category: Category? = null, target: Target = Target.CHAPTERS,
+                  scheduled: Boolean = false) {
             if (!isRunning(context)) {
                 val intent = Intent(context, LibraryUpdateService::class.java).apply {
                     putExtra(KEY_TARGET, target)
+                    putExtra(KEY_SCHEDULED, scheduled)
                     category?.let { putExtra(KEY_CATEGORY, it.id) }
                 }
                 if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
@@ -160,6 +312,7 @@ class LibraryUpdateService(
      */
     override fun onCreate() {
         super.onCreate()
+        runningRelay.call(true)
         startForeground(Notifications.ID_LIBRARY_PROGRESS, progressNotification.build())
         wakeLock = (getSystemService(Context.POWER_SERVICE) as PowerManager).newWakeLock(
                 PowerManager.PARTIAL_WAKE_LOCK, "LibraryUpdateService:WakeLock")
@@ -172,6 +325,7 @@ class LibraryUpdateService(
      */
     override fun onDestroy() {
         subscription?.unsubscribe()
+        runningRelay.call(false)
         if (wakeLock.isHeld) {
             wakeLock.release()
         }
@@ -202,13 +356,18 @@ class LibraryUpdateService(
         subscription?.unsubscribe()
 
         // Update favorite manga. Destroy service when completed or in case of an error.
+        // Updates restarted by the system or scheduled ones continue the previous one if it didn't
+        // finish, manual ones start again.
+        val resume = flags and Service.START_FLAG_REDELIVERY != 0 ||
+                intent.getBooleanExtra(KEY_SCHEDULED, false)
+
         subscription = Observable
                 .defer {
                     val mangaList = getMangaToUpdate(intent, target)
 
                     // Update either chapter list or manga details.
                     when (target) {
-                        Target.CHAPTERS -> updateChapterList(mangaList)
+                        Target.CHAPTERS -> updateChapterList(filterUpdatedManga(intent, mangaList, resume))
                         Target.DETAILS -> updateDetails(mangaList)
                         Target.TRACKING -> updateTrackings(mangaList)
                     }
@@ -251,15 +410,41 @@ class LibraryUpdateService(
             listToUpdate = listToUpdate.filter { it.status != SManga.COMPLETED }
         }
 
+        val maxAge = preferences.libraryUpdateMaxAge()
+        if (target == Target.CHAPTERS && maxAge > 0 && intent.getBooleanExtra(KEY_SCHEDULED, false)) {
+            listToUpdate = releaseCadence.getMangaToUpdate(listToUpdate, TimeUnit.DAYS.toMillis(maxAge.toLong()))
+        }
+
         return listToUpdate
     }
 
+    /**
+     * Starts the checkpoint of a chapter update and returns the manga not updated yet by the
+     * previous run of the same update, if it can be resumed and it didn't expire.
+     *
+     * @param intent the update intent.
+     * @param mangaList the manga to update.
+     * @param resume whether the previous run can be resumed.
+     */
+    private fun filterUpdatedManga(intent: Intent, mangaList: List<LibraryManga>, resume: Boolean): List<LibraryManga> {
+        val key = "${Target.CHAPTERS}_${intent.getIntExtra(KEY_CATEGORY, -1)}"
+        val maxAge = TimeUnit.HOURS.toMillis(preferences.libraryUpdateResumeWindow().toLong())
+
+        val doneIds = checkpoint.start(key, resume, maxAge)
+        return if (doneIds.isEmpty()) mangaList else mangaList.filter { it.id !in doneIds }
+    }
+
     /**
      * Method that updates the given list of manga. It's called in a background thread, so it's safe
      * to do heavy operations or network calls here.
      * For each manga it calls [updateManga] and updates the notification showing the current
      * progress.
      *
+     * Manga are grouped by source. Up to [PreferencesHelper.libraryUpdateThreads] sources are
+     * updated at once, starting with the ones with more manga, and each source updates up to
+     * [PreferencesHelper.libraryUpdateSourceThreads] manga at once. The result of each manga is
+     * published to [updateRelay].
+     *
      * @param mangaToUpdate the list to update
      * @return an observable delivering the progress of each update.
      */
@@ -269,7 +454,7 @@ class LibraryUpdateService(
         // List containing new updates
         val newUpdates = ArrayList<Manga>()
         // list containing failed updates
-        val failedUpdates = ArrayList<Manga>()
+        val failedUpdates = Collections.synchronizedList(ArrayList<Manga>())
         // List containing categories that get included in downloads.
         val categoriesToDownload = preferences.downloadNewCategories().getOrDefault().map(String::toInt)
         // Boolean to determine if user wants to automatically download new chapters.
@@ -277,39 +462,74 @@ class LibraryUpdateService(
         // Boolean to determine if DownloadManager has downloads
         var hasDownloads = false
 
-        // Emit each manga and update it sequentially.
-        return Observable.from(mangaToUpdate)
-                // Notify manga that will update.
-                .doOnNext { showProgressNotification(it, count.andIncrement, mangaToUpdate.size) }
-                // Update the chapters of the manga.
-                .concatMap { manga ->
-                    updateManga(manga)
-                            // If there's any error, return empty update and continue.
-                            .onErrorReturn {
-                                failedUpdates.add(manga)
-                                Pair(emptyList(), emptyList())
-                            }
-                            // Filter out mangas without new chapters (or failed).
-                            .filter { pair -> pair.first.isNotEmpty() }
-                            .doOnNext {
-                                if (downloadNew && (categoriesToDownload.isEmpty() ||
-                                        manga.category in categoriesToDownload)) {
-
-                                    downloadChapters(manga, it.first)
-                                    hasDownloads = true
-                                }
-                            }
-                            // Convert to the manga that contains new chapters.
-                            .map { manga }
+        val threads = preferences.libraryUpdateThreads()
+        val sourceThreads = preferences.libraryUpdateSourceThreads()
+        val sources = mangaToUpdate.groupBy { it.source }.values.sortedByDescending { it.size }
+
+        // Emit the manga of each source and update them in parallel.
+        return Observable.from(sources)
+                .flatMap({ sourceManga ->
+                    Observable.from(sourceManga)
+                            .flatMap({ manga ->
+                                withCircuitBreaker(manga, fetchChapterList(manga))
+                                        // Notify manga that will update.
+                                        .doOnSubscribe {
+                                            showProgressNotification(manga, count.get(), mangaToUpdate.size)
+                                        }
+                                        .map<Pair<LibraryManga, ChapterList?>> { manga to it }
+                                        // The chapter list didn't change.
+                                        .defaultIfEmpty(manga to null)
+                                        .doOnNext { releaseCadence.setChecked(manga) }
+                                        // If there's any error, return empty update and continue.
+                                        .onErrorReturn { error ->
+                                            failedUpdates.add(manga)
+                                            updateRelay.call(LibraryUpdateEvent(manga, error = error))
+                                            manga to null
+                                        }
+                                        .subscribeOn(Schedulers.io())
+                            }, sourceThreads)
+                }, threads)
+                // Results are serialized from here, the progress and the lists are safe to update.
+                .doOnNext { count.incrementAndGet() }
+                // Write the chapters of several manga at once.
+                .buffer(BATCH_TIMESPAN, TimeUnit.MILLISECONDS, BATCH_SIZE)
+                .filter { it.isNotEmpty() }
+                .observeOn(Schedulers.io())
+                .concatMap { batch ->
+                    // Manga with unchanged chapters (or failed) don't need to be synced.
+                    val changed = batch.mapNotNull { (manga, chapterList) ->
+                        chapterList?.let { manga to it }
+                    }
+                    val events = if (changed.isNotEmpty())
+                        syncChapterLists(changed, failedUpdates)
+                    else
+                        emptyList()
+
+                    // Save the progress, failed manga are updated again if the update is resumed.
+                    val failed = synchronized(failedUpdates) { failedUpdates.toSet() }
+                    checkpoint.setDone(batch.map { it.first }.filter { it !in failed })
+                    checkpoint.save()
+                    releaseCadence.save()
+                    chapterListStore.save()
+
+                    Observable.from(events)
                 }
+                .doOnNext { updateRelay.call(it) }
+                // Filter out mangas without new chapters (or failed).
+                .filter { it.newChapters.isNotEmpty() }
                 // Add manga with new chapters to the list.
-                .doOnNext { manga ->
-                    // Set last updated time
-                    manga.last_update = Date().time
-                    db.updateLastUpdated(manga).executeAsBlocking()
+                .doOnNext { (manga, chapters) ->
+                    if (downloadNew && (categoriesToDownload.isEmpty() ||
+                            manga.category in categoriesToDownload)) {
+
+                        downloadChapters(manga, chapters)
+                        hasDownloads = true
+                    }
                     // Add to the list
                     newUpdates.add(manga)
                 }
+                // Convert to the manga that contains new chapters.
+                .map { (manga, _) -> manga }
                 // Notify result of the overall update.
                 .doOnCompleted {
                     if (newUpdates.isNotEmpty()) {
@@ -323,37 +543,214 @@ class LibraryUpdateService(
                         Timber.e("Failed updating: ${failedUpdates.map { it.title }}")
                     }
 
+                    checkpoint.clear()
+
                     cancelProgressNotification()
                 }
+                // Save the check times also if the update is cancelled.
+                .doOnUnsubscribe {
+                    releaseCadence.save()
+                    chapterListStore.save()
+                }
     }
 
+    /**
+     * Queues the given chapters for download.
+     *
+     * @param manga the manga of the chapters.
+     * @param chapters the chapters to download. They must have been inserted in the database.
+     */
     fun downloadChapters(manga: Manga, chapters: List<Chapter>) {
-        // we need to get the chapters from the db so we have chapter ids
-        val mangaChapters = db.getChapters(manga).executeAsBlocking()
-        val dbChapters = chapters.map {
-            mangaChapters.find { mangaChapter -> mangaChapter.url == it.url }!!
-        }
         // We don't want to start downloading while the library is updating, because websites
         // may don't like it and they could ban the user.
-        downloadManager.downloadChapters(manga, dbChapters, false)
+        downloadManager.downloadChapters(manga, chapters, false)
     }
 
     /**
-     * Updates the chapters for the given manga and adds them to the database.
+     * Updates the chapters for the given manga and adds them to the database. The chapter list is
+     * requested conditionally when the source allows it, and nothing is emitted if it didn't
+     * change since the previous update.
      *
      * @param manga the manga to update.
      * @return a pair of the inserted and removed chapters.
      */
     fun updateManga(manga: Manga): Observable<Pair<List<Chapter>, List<Chapter>>> {
+        return fetchChapterList(manga)
+                .map { syncChapterList(manga, it) }
+    }
+
+    /**
+     * Returns an observable with the chapter list of the given manga, or an empty observable if
+     * it didn't change since the previous update. The chapter list is requested conditionally when
+     * the source supports it, and its digest is compared with the previous one.
+     *
+     * @param manga the manga to look for chapters.
+     */
+    private fun fetchChapterList(manga: Manga): Observable<ChapterList> {
         val source = sourceManager.get(manga.source) as? HttpSource ?: return Observable.empty()
-        return source.fetchChapterList(manga)
-                .map { syncChaptersWithSource(db, it, manga, source) }
+
+        return source.fetchChapterListIfModified(manga, chapterListStore.getValidators(manga))
+                .flatMap { (chapters, validators) ->
+                    if (chapters.isEmpty()) {
+                        throw Exception("No chapters found")
+                    }
+
+                    val digest = getChapterListDigest(chapters, manga)
+                    if (digest == chapterListStore.getDigest(manga)) {
+                        chapterListStore.setValidators(manga, validators)
+                        Observable.empty<ChapterList>()
+                    } else {
+                        Observable.just(ChapterList(source, chapters, validators, digest))
+                    }
+                }
+    }
+
+    /**
+     * Returns the given observable, recording its result in the circuit breaker of the source of
+     * the manga, or an error without subscribing to it if the source keeps failing. The manga
+     * of a failing source are skipped until it's time to probe it again.
+     *
+     * @param manga the manga requested by the observable.
+     * @param observable the observable with requests to the source.
+     */
+    private fun <T> withCircuitBreaker(manga: Manga, observable: Observable<T>): Observable<T> {
+        return Observable.defer {
+            if (circuitBreaker.allowRequest(manga.source)) {
+                observable
+                        .doOnError { circuitBreaker.onError(manga.source, it) }
+                        .doOnCompleted { circuitBreaker.onSuccess(manga.source) }
+            } else {
+                Observable.error(Exception("Source unavailable"))
+            }
+        }
+    }
+
+    /**
+     * Syncs the given chapter list with the database and stores its state for the next update.
+     *
+     * @param manga the manga of the chapters.
+     * @param chapterList the chapter list to sync.
+     * @return a pair of the inserted and removed chapters.
+     */
+    private fun syncChapterList(manga: Manga, chapterList: ChapterList): Pair<List<Chapter>, List<Chapter>> {
+        val result = syncChaptersWithSource(db, chapterList.chapters, manga, chapterList.source)
+        chapterListStore.setValidators(manga, chapterList.validators)
+        chapterListStore.setDigest(manga, chapterList.digest)
+        return result
+    }
+
+    /**
+     * Syncs the chapter lists of several manga in a single transaction, so that the database
+     * changes are notified once, and sets the last update time of the manga with new chapters.
+     * If the transaction fails, every manga is synced on its own to find the failing ones.
+     *
+     * @param batch the manga and their chapter lists.
+     * @param failedUpdates the list where the failing manga are added.
+     * @return the result of the update of every manga.
+     */
+    private fun syncChapterLists(batch: List<Pair<LibraryManga, ChapterList>>,
+                                 failedUpdates: MutableList<Manga>): List<LibraryUpdateEvent> {
+        return batchLock.write {
+            val number = lastBatch + 1
+            val events = syncChapterLists(batch, failedUpdates, number)
+            lastBatch = number
+            events
+        }
     }
 
+    /**
+     * Syncs the chapter lists of a batch of manga, whose results are published with the given
+     * batch number. The database changes are tagged with [DB_CHANGES_TAG].
+     *
+     * @param batch the manga and their chapter lists.
+     * @param failedUpdates the list where the failing manga are added.
+     * @param number the number of the batch.
+     * @return the result of the update of every manga.
+     */
+    private fun syncChapterLists(batch: List<Pair<LibraryManga, ChapterList>>,
+                                 failedUpdates: MutableList<Manga>,
+                                 number: Long): List<LibraryUpdateEvent> {
+        return try {
+            db.inTransactionReturn {
+                notifyBatchChanges()
+                val results = batch.map { (manga, chapterList) ->
+                    createEvent(manga, syncChapterList(manga, chapterList), number)
+                }
+                val updatedManga = results.filter { it.newChapters.isNotEmpty() }.map { it.manga }
+                if (updatedManga.isNotEmpty()) {
+                    val now = Date().time
+                    updatedManga.forEach { it.last_update = now }
+                    db.updateLastUpdated(updatedManga).executeAsBlocking()
+                }
+                results
+            }
+        } catch (e: Exception) {
+            Timber.e(e)
+            batch.map { (manga, chapterList) ->
+                try {
+                    db.inTransactionReturn {
+                        notifyBatchChanges()
+                        val event = createEvent(manga, syncChapterList(manga, chapterList), number)
+                        if (event.newChapters.isNotEmpty()) {
+                            manga.last_update = Date().time
+                            db.updateLastUpdated(manga).executeAsBlocking()
+                        }
+                        event
+                    }
+                } catch (e: Exception) {
+                    // Fetch the whole list again next time
+                    chapterListStore.setValidators(manga, null)
+                    chapterListStore.setDigest(manga, null)
+                    failedUpdates.add(manga)
+                    LibraryUpdateEvent(manga, error = e, batch = number)
+                }
+            }
+        }
+    }
+
+    /**
+     * Tags the changes of the running transaction as made by the update. The database merges
+     * them with the changes of the writes when the transaction ends.
+     */
+    private fun notifyBatchChanges() {
+        db.lowLevel().notifyAboutChanges(Changes.newInstance(
+                setOf(ChapterTable.TABLE, MangaTable.TABLE), setOf(DB_CHANGES_TAG)))
+    }
+
+    /**
+     * Returns the result of a synced chapter list.
+     *
+     * @param manga the updated manga.
+     * @param result a pair of the inserted and removed chapters.
+     * @param batch the number of the batch where the chapters were written.
+     */
+    private fun createEvent(manga: LibraryManga, result: Pair<List<Chapter>, List<Chapter>>,
+                            batch: Long): LibraryUpdateEvent {
+        val (inserted, removed) = result
+        val unreadDelta = inserted.count { !it.read } - removed.count { !it.read }
+        return LibraryUpdateEvent(manga, inserted, unreadDelta, batch = batch)
+    }
+
+    /**
+     * A chapter list fetched from a source.
+     *
+     * @param source the source of the chapters.
+     * @param chapters the chapters from the source.
+     * @param validators the validators of the response, if any.
+     * @param digest the digest of the chapters.
+     */
+    private class ChapterList(val source: HttpSource,
+                              val chapters: List<SChapter>,
+                              val validators: ResponseValidators?,
+                              val digest: String)
+
     /**
      * Method that updates the details of the given list of manga. It's called in a background
      * thread, so it's safe to do heavy operations or network calls here.
      *
+     * Manga are grouped by source and updated in parallel like in [updateChapterList]. Only the
+     * details that changed are written, several manga at once.
+     *
      * @param mangaToUpdate the list to update
      * @return an observable delivering the progress of each update.
      */
@@ -361,22 +758,42 @@ class LibraryUpdateService(
         // Initialize the variables holding the progress of the updates.
         val count = AtomicInteger(0)
 
-        // Emit each manga and update it sequentially.
-        return Observable.from(mangaToUpdate)
-                // Notify manga that will update.
-                .doOnNext { showProgressNotification(it, count.andIncrement, mangaToUpdate.size) }
-                // Update the details of the manga.
-                .concatMap { manga ->
-                    val source = sourceManager.get(manga.source) as? HttpSource
-                            ?: return@concatMap Observable.empty<LibraryManga>()
-
-                    source.fetchMangaDetails(manga)
-                            .map { networkManga ->
-                                manga.copyFrom(networkManga)
-                                db.insertManga(manga).executeAsBlocking()
-                                manga
-                            }
-                            .onErrorReturn { manga }
+        val threads = preferences.libraryUpdateThreads()
+        val sourceThreads = preferences.libraryUpdateSourceThreads()
+        val sources = mangaToUpdate.groupBy { it.source }.values.sortedByDescending { it.size }
+
+        // Emit the manga of each source and update them in parallel.
+        return Observable.from(sources)
+                .flatMap({ sourceManga ->
+                    Observable.from(sourceManga)
+                            .flatMap({ manga ->
+                                val source = sourceManager.get(manga.source) as? HttpSource
+                                        ?: return@flatMap Observable.empty<Pair<LibraryManga, SManga?>>()
+
+                                withCircuitBreaker(manga, source.fetchMangaDetails(manga))
+                                        // Notify manga that will update.
+                                        .doOnSubscribe {
+                                            showProgressNotification(manga, count.get(), mangaToUpdate.size)
+                                        }
+                                        .map<Pair<LibraryManga, SManga?>> { manga to it }
+                                        .onErrorReturn { manga to null }
+                                        .subscribeOn(Schedulers.io())
+                            }, sourceThreads)
+                }, threads)
+                .doOnNext { count.incrementAndGet() }
+                .filter { (_, networkManga) -> networkManga != null }
+                // Write the details of several manga at once.
+                .buffer(BATCH_TIMESPAN, TimeUnit.MILLISECONDS, BATCH_SIZE)
+                .filter { it.isNotEmpty() }
+                .observeOn(Schedulers.io())
+                .concatMap { batch ->
+                    val updates = batch.map { (manga, networkManga) ->
+                        val previous = SManga.create().apply { copyFrom(manga) }
+                        manga.copyFrom(networkManga!!)
+                        manga to previous
+                    }
+                    db.updateMangaDetails(updates).executeAsBlocking()
+                    Observable.from(batch.map { it.first })
                 }
                 .doOnCompleted {
                     cancelProgressNotification()
@@ -426,6 +843,7 @@ class LibraryUpdateService(
      * @param current the current progress.
      * @param total the total progress.
      */
+    @Synchronized
     private fun showProgressNotification(manga: Manga, current: Int, total: Int) {
         notificationManager.notify(Notifications.ID_LIBRARY_PROGRESS, progressNotification
                 .setContentTitle(manga.title)
@@ -0,0 +1,149 @@
+package eu.kanade.tachiyomi.data.library
+
+import android.content.Context
+import eu.kanade.tachiyomi.data.database.DatabaseHelper
+import eu.kanade.tachiyomi.data.database.models.LibraryManga
+import uy.kohesive.injekt.injectLazy
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Estimates when the manga from the library are expected to get new chapters, from the dates of
+ * their previous chapters, so that scheduled updates can skip the manga that are unlikely to have
+ * any. Manga are always checked again after a maximum age.
+ *
+ * @param context the application context.
+ */
+class ReleaseCadence(context: Context) {
+
+    /**
+     * Preference file where the last time each manga was checked is stored.
+     */
+    private val preferences = context.getSharedPreferences("library_update_checks", Context.MODE_PRIVATE)
+
+    /**
+     * Database helper.
+     */
+    private val db: DatabaseHelper by injectLazy()
+
+    /**
+     * Check times waiting to be saved, written together by [save].
+     */
+    private val pendingChecks = ConcurrentHashMap<Long, Long>()
+
+    /**
+     * Returns the manga that are expected to have new chapters or that weren't checked for longer
+     * than [maxAge], with the expected ones first.
+     *
+     * @param mangaList the manga to filter.
+     * @param maxAge the maximum time in milliseconds a manga can go unchecked.
+     */
+    fun getMangaToUpdate(mangaList: List<LibraryManga>, maxAge: Long): List<LibraryManga> {
+        val dates = getChapterDates()
+        val now = System.currentTimeMillis()
+
+        return mangaList
+                .mapNotNull { manga ->
+                    val mangaDates = dates[manga.id!!].orEmpty()
+                    val lastCheck = preferences.getLong(manga.id.toString(), 0)
+                    val expected = isUpdateExpected(mangaDates, now)
+                    if (expected || now - lastCheck >= maxAge) manga to expected else null
+                }
+                .sortedBy { (_, expected) -> !expected }
+                .map { (manga, _) -> manga }
+    }
+
+    /**
+     * Records that the given manga has just been checked for new chapters. It's safe to call this
+     * method from multiple threads.
+     *
+     * @param manga the checked manga.
+     */
+    fun setChecked(manga: LibraryManga) {
+        pendingChecks.put(manga.id!!, System.currentTimeMillis())
+    }
+
+    /**
+     * Saves the check times recorded since the last call.
+     */
+    @Synchronized
+    fun save() {
+        if (pendingChecks.isEmpty()) return
+
+        val editor = preferences.edit()
+        pendingChecks.keys.toList().forEach { id ->
+            pendingChecks.remove(id)?.let { editor.putLong(id.toString(), it) }
+        }
+        editor.apply()
+    }
+
+    /**
+     * Returns the dates of the chapters of every manga in the library, in a single query.
+     */
+    private fun getChapterDates(): Map<Long, List<Long>> {
+        val dates = HashMap<Long, MutableList<Long>>()
+        db.getLibraryChapterDates().executeAsBlocking().use { cursor ->
+            while (cursor.moveToNext()) {
+                dates.getOrPut(cursor.getLong(0)) { mutableListOf() }.add(cursor.getLong(1))
+            }
+        }
+        return dates
+    }
+
+    companion object {
+
+        private val DAY = TimeUnit.DAYS.toMillis(1)
+
+        /**
+         * Minimum amount of releases needed to estimate the interval between them.
+         */
+        private const val MIN_RELEASES = 3
+
+        /**
+         * Maximum amount of recent releases used to estimate the interval between them.
+         */
+        private const val MAX_RELEASES = 10
+
+        /**
+         * Amount of intervals without releases after which the manga is considered on hiatus.
+         */
+        private const val MAX_MISSED_RELEASES = 3
+
+        /**
+         * Returns the usual interval between releases in milliseconds, the median of the intervals
+         * of the most recent releases. Chapters released the same day count as a single release.
+         *
+         * @param dates the release dates of the chapters.
+         * @return the interval, or 0 if there aren't enough releases to know it.
+         */
+        fun getReleaseInterval(dates: Collection<Long>): Long {
+            val days = dates.filter { it > 0 }
+                    .map { it / DAY }
+                    .distinct()
+                    .sortedDescending()
+                    .take(MAX_RELEASES)
+
+            if (days.size < MIN_RELEASES) return 0
+
+            val intervals = days.zipWithNext { a, b -> a - b }.sorted()
+            return intervals[intervals.size / 2] * DAY
+        }
+
+        /**
+         * Returns whether a manga is expected to have new chapters. That's when most of its usual
+         * interval has passed since the last release, unless it missed so many releases that it's
+         * probably on hiatus. Manga without a known interval are always expected to update.
+         *
+         * @param dates the release dates of the chapters of the manga.
+         * @param now the current time in milliseconds.
+         */
+        fun isUpdateExpected(dates: Collection<Long>, now: Long): Boolean {
+            val interval = getReleaseInterval(dates)
+            if (interval <= 0) return true
+
+            val elapsed = now - dates.max()!!
+            return elapsed >= interval * 3 / 4 && elapsed <= interval * MAX_MISSED_RELEASES
+        }
+    }
+
+}
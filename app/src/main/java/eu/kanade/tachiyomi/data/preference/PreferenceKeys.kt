@@ -51,6 +51,14 @@ object PreferenceKeys {
 
     const val updateOnlyNonCompleted = "pref_update_only_non_completed_key"
 
+    const val libraryUpdateThreads = "library_update_threads"
+
+    const val libraryUpdateSourceThreads = "library_update_source_threads"
+
+    const val libraryUpdateMaxAge = "library_update_max_age"
+
+    const val libraryUpdateResumeWindow = "library_update_resume_window"
+
     const val autoUpdateTrack = "pref_auto_update_manga_sync_key"
 
     const val askUpdateTrack = "pref_ask_update_manga_sync_key"
@@ -69,6 +77,16 @@ object PreferenceKeys {
 
     const val downloadOnlyOverWifi = "pref_download_only_over_wifi_key"
 
+    const val downloadPageThreads = "download_page_threads"
+
+    const val downloadChapterThreads = "download_chapter_threads"
+
+    const val downloadSourceThreads = "download_source_threads"
+
+    const val saveChaptersAsCbz = "save_chapter_as_cbz"
+
+    const val networkCacheSize = "network_cache_size"
+
     const val numberOfBackups = "backup_slots"
 
     const val backupInterval = "backup_interval"
@@ -79,6 +79,14 @@ class PreferencesHelper(val context: Context) {
 
     fun updateOnlyNonCompleted() = prefs.getBoolean(Keys.updateOnlyNonCompleted, false)
 
+    fun libraryUpdateThreads() = prefs.getInt(Keys.libraryUpdateThreads, 4)
+
+    fun libraryUpdateSourceThreads() = prefs.getInt(Keys.libraryUpdateSourceThreads, 2)
+
+    fun libraryUpdateMaxAge() = prefs.getInt(Keys.libraryUpdateMaxAge, 0)
+
+    fun libraryUpdateResumeWindow() = prefs.getInt(Keys.libraryUpdateResumeWindow, 6)
+
     fun autoUpdateTrack() = prefs.getBoolean(Keys.autoUpdateTrack, true)
 
     fun askUpdateTrack() = prefs.getBoolean(Keys.askUpdateTrack, false)
@@ -125,6 +133,16 @@ class PreferencesHelper(val context: Context) {
 
     fun downloadOnlyOverWifi() = prefs.getBoolean(Keys.downloadOnlyOverWifi, true)
 
+    fun downloadPageThreads() = prefs.getInt(Keys.downloadPageThreads, 3)
+
+    fun downloadChapterThreads() = prefs.getInt(Keys.downloadChapterThreads, 2)
+
+    fun downloadSourceThreads() = prefs.getInt(Keys.downloadSourceThreads, 1)
+
+    fun saveChaptersAsCbz() = prefs.getBoolean(Keys.saveChaptersAsCbz, false)
+
+    fun networkCacheSize() = prefs.getInt(Keys.networkCacheSize, 25)
+
     fun numberOfBackups() = rxPrefs.getInteger(Keys.numberOfBackups, 1)
 
     fun backupInterval() = rxPrefs.getInteger(Keys.backupInterval, 0)
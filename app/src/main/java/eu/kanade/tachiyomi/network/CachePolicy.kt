@@ -0,0 +1,32 @@
+package eu.kanade.tachiyomi.network
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Overrides how the responses of the requests whose url matches [pattern] are stored in the HTTP
+ * cache, regardless of the cache headers sent by the site. Applied by [CachePolicyInterceptor].
+ *
+ * Note that requests built with [GET] accept cached responses up to 10 minutes old by default, a
+ * different [okhttp3.CacheControl] has to be given to them to use longer policies.
+ *
+ * @param pattern the regex matched against the urls of the requests.
+ * @param maxAge the time in seconds the responses are stored, or 0 to never store them.
+ */
+data class CachePolicy(val pattern: Regex, val maxAge: Int) {
+
+    companion object {
+        /**
+         * Returns a policy storing the responses of the matching requests for the given time.
+         */
+        fun maxAge(pattern: String, duration: Long, unit: TimeUnit): CachePolicy {
+            return CachePolicy(Regex(pattern), unit.toSeconds(duration).toInt())
+        }
+
+        /**
+         * Returns a policy that never stores the responses of the matching requests.
+         */
+        fun noStore(pattern: String): CachePolicy {
+            return CachePolicy(Regex(pattern), 0)
+        }
+    }
+}
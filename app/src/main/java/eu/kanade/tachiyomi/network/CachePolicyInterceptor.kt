@@ -0,0 +1,50 @@
+package eu.kanade.tachiyomi.network
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Network interceptor that rewrites the cache headers of the responses matching a [CachePolicy]
+ * of their host, so that the HTTP cache stores them as the policy says.
+ */
+class CachePolicyInterceptor : Interceptor {
+
+    /**
+     * Policies declared for each host, in the order they're checked.
+     */
+    private val policies = ConcurrentHashMap<String, List<CachePolicy>>()
+
+    /**
+     * Sets the cache policies of the given host.
+     *
+     * @param host the host of the requests.
+     * @param hostPolicies the policies of the host. The first one matching a request is applied.
+     */
+    fun setPolicies(host: String, hostPolicies: List<CachePolicy>) {
+        if (hostPolicies.isEmpty()) {
+            policies.remove(host)
+        } else {
+            policies.put(host, hostPolicies)
+        }
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+
+        if (request.method() != "GET" || !response.isSuccessful) return response
+
+        val url = request.url()
+        val policy = policies[url.host()]?.firstOrNull { it.pattern.containsMatchIn(url.toString()) }
+                ?: return response
+
+        val cacheControl = if (policy.maxAge > 0) "public, max-age=${policy.maxAge}" else "no-store"
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .removeHeader("Expires")
+                .header("Cache-Control", cacheControl)
+                .build()
+    }
+
+}
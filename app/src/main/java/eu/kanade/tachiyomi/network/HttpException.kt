@@ -0,0 +1,8 @@
+package eu.kanade.tachiyomi.network
+
+/**
+ * Exception thrown when a request gets an unsuccessful response.
+ *
+ * @param code the HTTP status code of the response.
+ */
+class HttpException(val code: Int) : Exception("HTTP error $code")
@@ -1,21 +1,40 @@
 package eu.kanade.tachiyomi.network
 
 import android.content.Context
+import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import okhttp3.Cache
 import okhttp3.OkHttpClient
+import uy.kohesive.injekt.injectLazy
 import java.io.File
 
 class NetworkHelper(context: Context) {
 
     private val cacheDir = File(context.cacheDir, "network_cache")
 
-    private val cacheSize = 5L * 1024 * 1024 // 5 MiB
+    private val preferences: PreferencesHelper by injectLazy()
+
+    /**
+     * Cache of the responses. Its size is read when the app starts.
+     */
+    val cache = Cache(cacheDir, preferences.networkCacheSize() * 1024L * 1024L)
 
     private val cookieManager = PersistentCookieJar(context)
 
+    /**
+     * Limits of the requests sent to every host.
+     */
+    val rateLimiter = RateLimitInterceptor()
+
+    /**
+     * Cache policies of the responses of every host.
+     */
+    val cachePolicies = CachePolicyInterceptor()
+
     val client = OkHttpClient.Builder()
             .cookieJar(cookieManager)
-            .cache(Cache(cacheDir, cacheSize))
+            .cache(cache)
+            .addInterceptor(rateLimiter)
+            .addNetworkInterceptor(cachePolicies)
             .build()
 
     val cloudflareClient = client.newBuilder()
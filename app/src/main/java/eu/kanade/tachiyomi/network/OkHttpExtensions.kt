@@ -50,7 +50,7 @@ fun Call.asObservableSuccess(): Observable<Response> {
     return asObservable().doOnNext { response ->
         if (!response.isSuccessful) {
             response.close()
-            throw Exception("HTTP error ${response.code()}")
+            throw HttpException(response.code())
         }
     }
 }
@@ -61,10 +61,24 @@ fun OkHttpClient.newCallWithProgress(request: Request, listener: ProgressListene
             .addNetworkInterceptor { chain ->
                 val originalResponse = chain.proceed(chain.request())
                 originalResponse.newBuilder()
-                        .body(ProgressResponseBody(originalResponse.body()!!, listener))
+                        .body(ProgressResponseBody(originalResponse.body()!!, listener,
+                                originalResponse.getRangeStart()))
                         .build()
             }
             .build()
 
     return progressClient.newCall(request)
+}
+
+/**
+ * Returns the first byte of the partial content of this response, or 0 if it's not partial.
+ */
+fun Response.getRangeStart(): Long {
+    if (code() != 206) return 0
+    // Format: bytes <first>-<last>/<length>
+    return header("Content-Range")
+            ?.substringAfter("bytes ", "")
+            ?.substringBefore('-')
+            ?.trim()
+            ?.toLongOrNull() ?: 0
 }
\ No newline at end of file
@@ -5,7 +5,17 @@ import okhttp3.ResponseBody
 import okio.*
 import java.io.IOException
 
-class ProgressResponseBody(private val responseBody: ResponseBody, private val progressListener: ProgressListener) : ResponseBody() {
+/**
+ * Response body that reports the progress of its reads to the given listener.
+ *
+ * @param responseBody the body to wrap.
+ * @param progressListener the listener of the progress.
+ * @param offset the position of this body in the whole resource if it's partial content, so that
+ * the progress is reported for the whole resource.
+ */
+class ProgressResponseBody(private val responseBody: ResponseBody,
+                           private val progressListener: ProgressListener,
+                           private val offset: Long = 0) : ResponseBody() {
 
     private val bufferedSource: BufferedSource by lazy {
         Okio.buffer(source(responseBody.source()))
@@ -32,7 +42,10 @@ class ProgressResponseBody(private val responseBody: ResponseBody, private val p
                 val bytesRead = super.read(sink, byteCount)
                 // read() returns the number of bytes read, or -1 if this source is exhausted.
                 totalBytesRead += if (bytesRead != -1L) bytesRead else 0
-                progressListener.update(totalBytesRead, responseBody.contentLength(), bytesRead == -1L)
+                val contentLength = responseBody.contentLength()
+                progressListener.update(offset + totalBytesRead,
+                        if (contentLength != -1L) offset + contentLength else -1L,
+                        bytesRead == -1L)
                 return bytesRead
             }
         }
@@ -0,0 +1,21 @@
+package eu.kanade.tachiyomi.network
+
+/**
+ * Limits of the requests sent to a host, enforced by [RateLimitInterceptor].
+ *
+ * @param maxRequests the maximum amount of requests in progress at once, until their responses
+ * are closed.
+ * @param permitsPerSecond the amount of requests that can be started per second on average.
+ * @param burst the amount of requests that can be started at once after the host was idle.
+ */
+data class RateLimit(val maxRequests: Int,
+                     val permitsPerSecond: Double,
+                     val burst: Int = Math.max(1, permitsPerSecond.toInt())) {
+
+    companion object {
+        /**
+         * Limits of the hosts that didn't declare their own.
+         */
+        val DEFAULT = RateLimit(maxRequests = 4, permitsPerSecond = 5.0)
+    }
+}
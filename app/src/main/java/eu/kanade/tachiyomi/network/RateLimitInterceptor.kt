@@ -0,0 +1,243 @@
+package eu.kanade.tachiyomi.network
+
+import okhttp3.CacheControl
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.BufferedSource
+import okio.ForwardingSource
+import okio.Okio
+import timber.log.Timber
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Interceptor that limits the requests sent to every host, so that parallel updates and downloads
+ * don't flood a site. Each host has a maximum of requests in progress and a token bucket limiting
+ * how often they're started. A request is in progress until its response is closed, so the
+ * download of the body counts too.
+ *
+ * It's meant to be an application interceptor, so that waiting requests don't hold a connection.
+ * Responses that can be served from the cache aren't limited, the cache is checked first without
+ * going to the network. The calling thread is blocked while a request waits for its turn.
+ */
+class RateLimitInterceptor : Interceptor {
+
+    /**
+     * Limits declared for each host.
+     */
+    private val limits = ConcurrentHashMap<String, RateLimit>()
+
+    /**
+     * State of the hosts that were requested.
+     */
+    private val throttles = ConcurrentHashMap<String, HostThrottle>()
+
+    /**
+     * Sets the limits of the given host. Requests already waiting keep the previous limits.
+     *
+     * @param host the host to limit.
+     * @param limit the limits of the host.
+     */
+    fun setLimit(host: String, limit: RateLimit) {
+        limits.put(host, limit)
+        throttles.remove(host)
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request)
+        }
+        val cached = proceedFromCache(chain, request)
+        if (cached != null) {
+            return cached
+        }
+
+        val host = request.url().host()
+        val throttle = throttles.getOrPut(host) { HostThrottle(limits[host] ?: RateLimit.DEFAULT) }
+
+        val acquired = throttle.acquire()
+        val response = try {
+            chain.proceed(request)
+        } catch (e: Throwable) {
+            if (acquired) throttle.release()
+            throw e
+        }
+
+        val body = response.body()
+        if (!acquired || body == null) {
+            if (acquired) throttle.release()
+            return response
+        }
+        return response.newBuilder()
+                .body(ReleasingResponseBody(body) { throttle.release() })
+                .build()
+    }
+
+    /**
+     * Returns the response of the request if it can be served from the cache without validating it
+     * with the server, or null otherwise.
+     *
+     * @param chain the chain of the request.
+     * @param request the request to look up.
+     */
+    private fun proceedFromCache(chain: Interceptor.Chain, request: Request): Response? {
+        val cacheControl = request.cacheControl()
+        if (request.method() != "GET" || cacheControl.noCache() || cacheControl.noStore()) {
+            return null
+        }
+
+        val onlyIfCached = CacheControl.Builder().onlyIfCached().apply {
+            if (cacheControl.maxAgeSeconds() != -1)
+                maxAge(cacheControl.maxAgeSeconds(), TimeUnit.SECONDS)
+            if (cacheControl.maxStaleSeconds() != -1)
+                maxStale(cacheControl.maxStaleSeconds(), TimeUnit.SECONDS)
+            if (cacheControl.minFreshSeconds() != -1)
+                minFresh(cacheControl.minFreshSeconds(), TimeUnit.SECONDS)
+        }.build()
+
+        val response = chain.proceed(request.newBuilder().cacheControl(onlyIfCached).build())
+        if (response.code() == HTTP_GATEWAY_TIMEOUT && response.cacheResponse() == null) {
+            // Not in the cache or stale, it has to go to the network
+            response.close()
+            return null
+        }
+        return response
+    }
+
+    /**
+     * Limits of the requests to a single host.
+     *
+     * @param limit the limits of the host.
+     */
+    private class HostThrottle(private val limit: RateLimit) {
+
+        private val requests = Semaphore(limit.maxRequests, true)
+
+        /**
+         * Tokens available to start requests. It's negative when requests are waiting for tokens.
+         */
+        private var tokens = limit.burst.toDouble()
+
+        private var lastRefill = System.nanoTime()
+
+        /**
+         * Waits until a request can be started.
+         *
+         * @return true if a slot of the requests in progress was taken and it must be released,
+         * false if the wait timed out, which only happens if responses aren't closed.
+         */
+        fun acquire(): Boolean {
+            val acquired = try {
+                requests.tryAcquire(MAX_WAIT, TimeUnit.MILLISECONDS)
+            } catch (e: InterruptedException) {
+                throw InterruptedIOException()
+            }
+            if (!acquired) {
+                Timber.w("Requests in progress not released, a response may not be closed")
+            }
+
+            val delay = reserveToken()
+            if (delay > TimeUnit.MILLISECONDS.toNanos(MAX_TOKEN_WAIT)) {
+                returnToken()
+                if (acquired) release()
+                throw InterruptedIOException("Timed out waiting for the rate limit of the host")
+            }
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay)
+                } catch (e: InterruptedException) {
+                    if (acquired) release()
+                    throw InterruptedIOException()
+                }
+            }
+            return acquired
+        }
+
+        fun release() {
+            requests.release()
+        }
+
+        /**
+         * Takes a token from the bucket and returns the time in nanoseconds to wait until it's
+         * available.
+         */
+        @Synchronized
+        private fun reserveToken(): Long {
+            val now = System.nanoTime()
+            tokens = Math.min(limit.burst.toDouble(),
+                    tokens + (now - lastRefill) * limit.permitsPerSecond / NANOS_PER_SECOND)
+            lastRefill = now
+
+            tokens -= 1
+            return if (tokens >= 0) 0 else (-tokens * NANOS_PER_SECOND / limit.permitsPerSecond).toLong()
+        }
+
+        /**
+         * Gives back a token reserved by a request that won't be started.
+         */
+        @Synchronized
+        private fun returnToken() {
+            tokens += 1
+        }
+    }
+
+    /**
+     * Response body that calls [onClose] the first time it's closed.
+     */
+    private class ReleasingResponseBody(private val responseBody: ResponseBody,
+                                        private val onClose: () -> Unit) : ResponseBody() {
+
+        private val closed = AtomicBoolean()
+
+        private val bufferedSource: BufferedSource by lazy {
+            Okio.buffer(object : ForwardingSource(responseBody.source()) {
+                override fun close() {
+                    try {
+                        super.close()
+                    } finally {
+                        if (closed.compareAndSet(false, true)) onClose()
+                    }
+                }
+            })
+        }
+
+        override fun contentType(): MediaType? {
+            return responseBody.contentType()
+        }
+
+        override fun contentLength(): Long {
+            return responseBody.contentLength()
+        }
+
+        override fun source(): BufferedSource {
+            return bufferedSource
+        }
+    }
+
+    private companion object {
+        /**
+         * Maximum time in milliseconds a request waits for the requests in progress.
+         */
+        const val MAX_WAIT = 60000L
+
+        /**
+         * Maximum time in milliseconds a request waits for a token of the bucket.
+         */
+        const val MAX_TOKEN_WAIT = 30000L
+
+        /**
+         * Code of the response built by the cache when an only-if-cached request can't be served.
+         */
+        const val HTTP_GATEWAY_TIMEOUT = 504
+
+        const val NANOS_PER_SECOND = 1e9
+    }
+
+}
@@ -0,0 +1,53 @@
+package eu.kanade.tachiyomi.network
+
+import okhttp3.Request
+import okhttp3.Response
+
+/**
+ * Validators of a response, used to ask the server to send the resource again only if it changed
+ * since that response.
+ *
+ * @param etag the value of the ETag header.
+ * @param lastModified the value of the Last-Modified header.
+ */
+data class ResponseValidators(val etag: String?, val lastModified: String?) {
+
+    /**
+     * Returns a copy of the given request that the server answers with 304 if the resource didn't
+     * change.
+     *
+     * @param request the request to make conditional.
+     */
+    fun applyTo(request: Request): Request {
+        return request.newBuilder().apply {
+            etag?.let { header("If-None-Match", it) }
+            lastModified?.let { header("If-Modified-Since", it) }
+        }.build()
+    }
+
+    /**
+     * The value of an If-Range header for this response: the ETag if it's strong, otherwise the
+     * last modified date.
+     */
+    val rangeValidator: String?
+        get() = etag?.takeUnless { it.startsWith("W/") } ?: lastModified
+
+    companion object {
+
+        /**
+         * Returns the validators of the given response, or null if it doesn't have any.
+         *
+         * @param response the response to read.
+         */
+        fun from(response: Response): ResponseValidators? {
+            val etag = response.header("ETag")
+            val lastModified = response.header("Last-Modified")
+            return if (etag != null || lastModified != null) {
+                ResponseValidators(etag, lastModified)
+            } else {
+                null
+            }
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package eu.kanade.tachiyomi.source
+
+import eu.kanade.tachiyomi.network.HttpException
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Stops sending requests to sources that keep failing, so that library updates and downloads
+ * don't wait for the timeout of every request to a source that's down. After [FAILURE_THRESHOLD]
+ * consecutive failures of a source its requests are skipped, until a single request is let
+ * through to probe it. The delay until the next probe doubles every time a probe fails.
+ *
+ * It's safe to use this class from multiple threads.
+ *
+ * @param clock the source of the current time in milliseconds.
+ */
+class SourceCircuitBreaker(private val clock: () -> Long = System::currentTimeMillis) {
+
+    /**
+     * State of the sources with failed requests.
+     */
+    private val states = ConcurrentHashMap<Long, State>()
+
+    /**
+     * Returns whether a request to the given source should be sent. When the source is failing
+     * and it's time to probe it, only the first caller is allowed.
+     *
+     * @param sourceId the id of the source.
+     */
+    fun allowRequest(sourceId: Long): Boolean {
+        val state = states[sourceId] ?: return true
+
+        synchronized(state) {
+            if (state.failures < FAILURE_THRESHOLD) return true
+
+            val now = clock()
+            if (now < state.retryAt) return false
+            // Wait for the result of a running probe, unless it never finished.
+            if (state.probeStart != 0L && now - state.probeStart < PROBE_TIMEOUT) return false
+
+            state.probeStart = now
+            return true
+        }
+    }
+
+    /**
+     * Records a successful request to the given source, closing its circuit.
+     *
+     * @param sourceId the id of the source.
+     */
+    fun onSuccess(sourceId: Long) {
+        states.remove(sourceId)
+    }
+
+    /**
+     * Records a failed request to the given source.
+     *
+     * @param sourceId the id of the source.
+     */
+    fun onFailure(sourceId: Long) {
+        val state = states.getOrPut(sourceId) { State() }
+
+        synchronized(state) {
+            val wasProbing = state.probeStart != 0L
+            state.probeStart = 0
+            state.failures++
+
+            if (state.failures == FAILURE_THRESHOLD) {
+                state.delay = MIN_DELAY
+            } else if (wasProbing) {
+                state.delay = minOf(state.delay * 2, MAX_DELAY)
+            } else {
+                return
+            }
+            state.retryAt = clock() + state.delay
+        }
+    }
+
+    /**
+     * Records the error of a request to the given source. Only errors meaning that the source is
+     * down count as failures, other errors like a missing manga mean that it answered.
+     *
+     * @param sourceId the id of the source.
+     * @param error the error of the request.
+     */
+    fun onError(sourceId: Long, error: Throwable) {
+        if (isSourceFailure(error)) {
+            onFailure(sourceId)
+        } else {
+            onSuccess(sourceId)
+        }
+    }
+
+    /**
+     * Failures of a source.
+     */
+    private class State {
+        var failures = 0
+        var delay = 0L
+        var retryAt = 0L
+        var probeStart = 0L
+    }
+
+    companion object {
+        /**
+         * Consecutive failures after which the requests to a source are skipped.
+         */
+        const val FAILURE_THRESHOLD = 5
+
+        /**
+         * Delay until the first probe of a failing source.
+         */
+        val MIN_DELAY = TimeUnit.MINUTES.toMillis(1)
+
+        /**
+         * Maximum delay between the probes of a failing source.
+         */
+        val MAX_DELAY = TimeUnit.HOURS.toMillis(1)
+
+        /**
+         * Time after which a probe without result is considered lost.
+         */
+        private val PROBE_TIMEOUT = TimeUnit.MINUTES.toMillis(2)
+
+        /**
+         * Returns whether the given error means that the source is down: network errors, timeouts
+         * and server errors.
+         *
+         * @param error the error of a request.
+         */
+        fun isSourceFailure(error: Throwable): Boolean {
+            return generateSequence(error) { it.cause }.take(10).any {
+                it is IOException || it is HttpException && it.code >= 500
+            }
+        }
+    }
+
+}
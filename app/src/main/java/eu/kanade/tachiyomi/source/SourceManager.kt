@@ -1,17 +1,22 @@
 package eu.kanade.tachiyomi.source
 
 import android.content.Context
+import eu.kanade.tachiyomi.network.NetworkHelper
 import eu.kanade.tachiyomi.source.online.HttpSource
 import eu.kanade.tachiyomi.source.online.english.*
 import eu.kanade.tachiyomi.source.online.german.WieManga
 import eu.kanade.tachiyomi.source.online.russian.Mangachan
 import eu.kanade.tachiyomi.source.online.russian.Mintmanga
 import eu.kanade.tachiyomi.source.online.russian.Readmanga
+import okhttp3.HttpUrl
+import uy.kohesive.injekt.injectLazy
 
 open class SourceManager(private val context: Context) {
 
     private val sourcesMap = mutableMapOf<Long, Source>()
 
+    private val network: NetworkHelper by injectLazy()
+
     init {
         createInternalSources().forEach { registerSource(it) }
     }
@@ -27,6 +32,12 @@ open class SourceManager(private val context: Context) {
     internal fun registerSource(source: Source, overwrite: Boolean = false) {
         if (overwrite || !sourcesMap.containsKey(source.id)) {
             sourcesMap.put(source.id, source)
+            if (source is HttpSource) {
+                HttpUrl.parse(source.baseUrl)?.let {
+                    network.rateLimiter.setLimit(it.host(), source.rateLimit)
+                    network.cachePolicies.setPolicies(it.host(), source.cachePolicies)
+                }
+            }
         }
     }
 
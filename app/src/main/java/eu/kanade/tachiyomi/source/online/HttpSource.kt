@@ -1,8 +1,15 @@
 package eu.kanade.tachiyomi.source.online
 
+import eu.kanade.tachiyomi.network.CachePolicy
 import eu.kanade.tachiyomi.network.GET
+import eu.kanade.tachiyomi.network.HttpException
 import eu.kanade.tachiyomi.network.NetworkHelper
+import eu.kanade.tachiyomi.network.ProgressListener
+import eu.kanade.tachiyomi.network.RateLimit
+import eu.kanade.tachiyomi.network.ResponseValidators
+import eu.kanade.tachiyomi.network.asObservable
 import eu.kanade.tachiyomi.network.asObservableSuccess
+import eu.kanade.tachiyomi.network.getRangeStart
 import eu.kanade.tachiyomi.network.newCallWithProgress
 import eu.kanade.tachiyomi.source.CatalogueSource
 import eu.kanade.tachiyomi.source.model.*
@@ -67,6 +74,20 @@ abstract class HttpSource : CatalogueSource {
     open val client: OkHttpClient
         get() = network.client
 
+    /**
+     * Limits of the requests to the host of [baseUrl], applied to every client of the app. Sources
+     * of sites that ban users for sending too many requests should lower them.
+     */
+    open val rateLimit: RateLimit
+        get() = RateLimit.DEFAULT
+
+    /**
+     * Policies overriding how the responses from the host of [baseUrl] are stored in the HTTP
+     * cache, like caching the catalogue listings for some minutes.
+     */
+    open val cachePolicies: List<CachePolicy>
+        get() = emptyList()
+
     /**
      * Headers builder for requests. Implementations can override this method for custom headers.
      */
@@ -215,6 +236,57 @@ abstract class HttpSource : CatalogueSource {
         }
     }
 
+    /**
+     * Whether the chapter list can be requested conditionally with [chapterListRequest], so that
+     * the site can report that it didn't change. Sources overriding [fetchChapterList] must not
+     * enable it, unless they also override [fetchChapterListIfModified].
+     */
+    open val supportsConditionalChapterList: Boolean
+        get() = false
+
+    /**
+     * Returns an observable with the updated chapter list for a manga and the validators of the
+     * response, or an empty observable if the site reports that the list didn't change since the
+     * response of the given validators. If [supportsConditionalChapterList] is false the list is
+     * fetched with [fetchChapterList] instead, without validators.
+     *
+     * @param manga the manga to look for chapters.
+     * @param validators the validators of the previous response, if any.
+     */
+    open fun fetchChapterListIfModified(manga: SManga, validators: ResponseValidators?)
+            : Observable<Pair<List<SChapter>, ResponseValidators?>> {
+
+        if (!supportsConditionalChapterList) {
+            return fetchChapterList(manga).map<Pair<List<SChapter>, ResponseValidators?>> { it to null }
+        }
+
+        if (manga.status == SManga.LICENSED) {
+            return Observable.error(Exception("Licensed - No chapters to show"))
+        }
+
+        val request = chapterListRequest(manga).let { validators?.applyTo(it) ?: it }
+        return client.newCall(request)
+                .asObservable()
+                .filter { response ->
+                    // The chapter list didn't change
+                    if (response.code() == 304) {
+                        response.close()
+                        false
+                    } else {
+                        true
+                    }
+                }
+                .doOnNext { response ->
+                    if (!response.isSuccessful) {
+                        response.close()
+                        throw HttpException(response.code())
+                    }
+                }
+                .map { response ->
+                    chapterListParse(response) to ResponseValidators.from(response)
+                }
+    }
+
     /**
      * Returns the request for updating the chapter list. Override only if it's needed to override
      * the url, send different headers or request method like POST.
@@ -301,6 +373,49 @@ abstract class HttpSource : CatalogueSource {
                 .asObservableSuccess()
     }
 
+    /**
+     * Returns an observable with the response of the source image, starting at the given byte
+     * offset. The response code is 206 if the server honoured the range, otherwise the whole image
+     * is returned. The range is only honoured if the image still matches the given validator. If
+     * the range can't be satisfied or the server sends a different one, the whole image is
+     * requested again.
+     *
+     * @param page the page whose source image has to be downloaded.
+     * @param offset the amount of bytes already downloaded.
+     * @param listener the listener of the progress, the page by default.
+     * @param validator the ETag or last modified date of the response of the downloaded bytes.
+     */
+    fun fetchImage(page: Page, offset: Long, listener: ProgressListener = page,
+                   validator: String? = null): Observable<Response> {
+        if (offset <= 0) {
+            return client.newCallWithProgress(imageRequest(page), listener)
+                    .asObservableSuccess()
+        }
+
+        val request = imageRequest(page).newBuilder()
+                .header("Range", "bytes=$offset-")
+                .apply { validator?.let { header("If-Range", it) } }
+                .build()
+
+        return client.newCallWithProgress(request, listener)
+                .asObservable()
+                .flatMap { response ->
+                    if (response.code() == 416 ||
+                            response.code() == 206 && response.getRangeStart() != offset) {
+                        response.close()
+                        fetchImage(page, 0, listener)
+                    } else {
+                        Observable.just(response)
+                    }
+                }
+                .doOnNext { response ->
+                    if (!response.isSuccessful) {
+                        response.close()
+                        throw HttpException(response.code())
+                    }
+                }
+    }
+
     /**
      * Returns the request for getting the source image. Override only if it's needed to override
      * the url, send different headers or request method like POST.
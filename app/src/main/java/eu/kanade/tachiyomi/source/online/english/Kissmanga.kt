@@ -27,6 +27,8 @@ class Kissmanga : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     override val client: OkHttpClient = network.cloudflareClient
 
     override fun popularMangaSelector() = "table.listing tr:gt(1)"
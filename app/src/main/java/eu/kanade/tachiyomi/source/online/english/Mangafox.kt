@@ -23,6 +23,8 @@ class Mangafox : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     override fun popularMangaSelector() = "div#mangalist > ul.list > li"
 
     override fun popularMangaRequest(page: Int): Request {
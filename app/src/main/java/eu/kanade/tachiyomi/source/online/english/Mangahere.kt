@@ -27,6 +27,8 @@ class Mangahere : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     private val trustManager = object : X509TrustManager {
         override fun getAcceptedIssuers(): Array<X509Certificate> {
             return emptyArray()
@@ -24,6 +24,8 @@ class Mangasee : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     private val recentUpdatesPattern = Pattern.compile("(.*?)\\s(\\d+\\.?\\d*)\\s?(Completed)?")
 
     private val indexPattern = Pattern.compile("-index-(.*?)-")
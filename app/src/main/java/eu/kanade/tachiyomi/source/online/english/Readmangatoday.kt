@@ -23,6 +23,8 @@ class Readmangatoday : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     override val client: OkHttpClient get() = network.cloudflareClient
 
     /**
@@ -23,6 +23,8 @@ class WieManga : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     override fun popularMangaSelector() = ".booklist td > div"
 
     override fun latestUpdatesSelector() = ".booklist td > div"
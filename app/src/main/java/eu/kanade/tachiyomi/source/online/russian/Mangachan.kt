@@ -23,6 +23,8 @@ class Mangachan : ParsedHttpSource() {
 
     override val supportsLatest = true
 
+    override val supportsConditionalChapterList = true
+
     override fun popularMangaRequest(page: Int): Request =
             GET("$baseUrl/mostfavorites?offset=${20 * (page - 1)}", headers)
 
@@ -1,6 +1,8 @@
 package eu.kanade.tachiyomi.ui.download
 
+import android.support.v7.app.AppCompatActivity
 import android.support.v7.widget.LinearLayoutManager
+import android.text.format.Formatter
 import android.view.*
 import eu.kanade.tachiyomi.R
 import eu.kanade.tachiyomi.data.download.DownloadService
@@ -77,9 +79,19 @@ class DownloadController : NucleusController<DownloadPresenter>() {
         presenter.getDownloadProgressObservable()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribeUntilDestroy { onUpdateDownloadedPages(it) }
+
+        // Bytes received during the last second
+        Observable.interval(0, 1, TimeUnit.SECONDS)
+                .map { presenter.downloadManager.metrics.bytesDownloaded }
+                .buffer(2, 1)
+                .map { it[1] - it[0] }
+                .onBackpressureLatest()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribeUntilDestroy { setDownloadSpeed(it) }
     }
 
     override fun onDestroyView(view: View) {
+        (activity as? AppCompatActivity)?.supportActionBar?.subtitle = null
         for (subscription in progressSubscriptions.values) {
             subscription.unsubscribe()
         }
@@ -115,6 +127,7 @@ class DownloadController : NucleusController<DownloadPresenter>() {
                 DownloadService.stop(context)
                 presenter.clearQueue()
             }
+            R.id.download_statistics -> DownloadMetricsDialog().showDialog(router)
             else -> return super.onOptionsItemSelected(item)
         }
         return true
@@ -222,6 +235,21 @@ class DownloadController : NucleusController<DownloadPresenter>() {
         getHolder(download)?.notifyDownloadedPages()
     }
 
+    /**
+     * Shows the download speed in the toolbar while the queue is running.
+     *
+     * @param bytesPerSecond the bytes received during the last second.
+     */
+    private fun setDownloadSpeed(bytesPerSecond: Long) {
+        val context = view?.context ?: return
+        val actionBar = (activity as? AppCompatActivity)?.supportActionBar ?: return
+        actionBar.subtitle = if (isRunning) {
+            context.getString(R.string.download_speed, Formatter.formatShortFileSize(context, bytesPerSecond))
+        } else {
+            null
+        }
+    }
+
     /**
      * Returns the holder for the given download.
      *
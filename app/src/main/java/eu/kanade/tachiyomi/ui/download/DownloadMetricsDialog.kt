@@ -0,0 +1,46 @@
+package eu.kanade.tachiyomi.ui.download
+
+import android.app.Dialog
+import android.content.Intent
+import android.os.Bundle
+import com.afollestad.materialdialogs.MaterialDialog
+import eu.kanade.tachiyomi.R
+import eu.kanade.tachiyomi.data.download.DownloadManager
+import eu.kanade.tachiyomi.ui.base.controller.DialogController
+import uy.kohesive.injekt.injectLazy
+
+/**
+ * Dialog showing the statistics of the downloaded images, which can be shared as plain text.
+ */
+class DownloadMetricsDialog(bundle: Bundle? = null) : DialogController(bundle) {
+
+    /**
+     * Download manager.
+     */
+    private val downloadManager: DownloadManager by injectLazy()
+
+    /**
+     * Called when creating the dialog for this controller.
+     *
+     * @param savedViewState The saved state of this dialog.
+     * @return a new dialog instance.
+     */
+    override fun onCreateDialog(savedViewState: Bundle?): Dialog {
+        val report = downloadManager.metrics.getReport()
+
+        return MaterialDialog.Builder(activity!!)
+                .title(R.string.download_statistics)
+                .content(report)
+                .positiveText(R.string.action_close)
+                .neutralText(R.string.action_share)
+                .onNeutral { _, _ ->
+                    val intent = Intent(Intent.ACTION_SEND).apply {
+                        type = "text/plain"
+                        putExtra(Intent.EXTRA_TEXT, report)
+                    }
+                    startActivity(Intent.createChooser(intent, resources?.getString(R.string.action_share)))
+                }
+                .build()
+    }
+
+}
@@ -1,13 +1,21 @@
 package eu.kanade.tachiyomi.ui.library
 
 import android.os.Bundle
+import com.f2prateek.rx.preferences.Preference
 import com.jakewharton.rxrelay.BehaviorRelay
 import eu.kanade.tachiyomi.data.cache.CoverCache
 import eu.kanade.tachiyomi.data.database.DatabaseHelper
 import eu.kanade.tachiyomi.data.database.models.Category
+import eu.kanade.tachiyomi.data.database.models.LibraryManga
 import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.data.database.models.MangaCategory
+import eu.kanade.tachiyomi.data.database.tables.CategoryTable
+import eu.kanade.tachiyomi.data.database.tables.ChapterTable
+import eu.kanade.tachiyomi.data.database.tables.MangaCategoryTable
+import eu.kanade.tachiyomi.data.database.tables.MangaTable
 import eu.kanade.tachiyomi.data.download.DownloadManager
+import eu.kanade.tachiyomi.data.library.LibraryUpdateEvent
+import eu.kanade.tachiyomi.data.library.LibraryUpdateService
 import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import eu.kanade.tachiyomi.data.preference.getOrDefault
 import eu.kanade.tachiyomi.source.LocalSource
@@ -87,7 +95,8 @@ class LibraryPresenter(
     fun subscribeLibrary() {
         if (librarySubscription.isNullOrUnsubscribed()) {
             librarySubscription = getLibraryObservable()
-                    .combineLatest(downloadTriggerRelay.observeOn(Schedulers.io()),
+                    .combineLatest(Observable.merge(downloadTriggerRelay, downloadManager.cacheRenewedRelay)
+                            .observeOn(Schedulers.io()),
                             { lib, _ -> lib.apply { setDownloadCount(mangaMap) } })
                     .combineLatest(filterTriggerRelay.observeOn(Schedulers.io()),
                             { lib, _ -> lib.copy(mangaMap = applyFilters(lib.mangaMap)) })
@@ -241,17 +250,71 @@ class LibraryPresenter(
     }
 
     /**
-     * Get the manga grouped by categories.
+     * Get the manga grouped by categories. While the library is updating, the result of every
+     * updated manga is applied to the last map instead of querying the whole library again.
      *
      * @return an observable containing a map with the category id as key and a list of manga as the
      * value.
      */
     private fun getLibraryMangasObservable(): Observable<LibraryMap> {
         val libraryAsList = preferences.libraryAsList()
-        return db.getLibraryMangas().asRxObservable()
-                .map { list ->
-                    list.map { LibraryItem(it, libraryAsList) }.groupBy { it.manga.category }
+        val tables = setOf(MangaTable.TABLE, ChapterTable.TABLE, MangaCategoryTable.TABLE, CategoryTable.TABLE)
+
+        return LibraryUpdateService.observeWithUpdates(db, tables, {
+            db.getLibraryMangas().executeAsBlocking()
+                    .map { LibraryItem(it, libraryAsList) }
+                    .groupBy { it.manga.category }
+        }, { map, event -> applyUpdateEvent(map, event, libraryAsList) })
+    }
+
+    /**
+     * Returns a copy of the given map of manga with the result of the update of a manga applied.
+     * The items of the manga are replaced, the given map and items aren't modified.
+     *
+     * @param map the map of manga.
+     * @param event the result of the update.
+     * @param libraryAsList the preference of the library display mode.
+     */
+    private fun applyUpdateEvent(map: LibraryMap, event: LibraryUpdateEvent,
+                                 libraryAsList: Preference<Boolean>): LibraryMap {
+        if (event.newChapters.isEmpty() && event.unreadDelta == 0) return map
+
+        return map.mapValues { (_, items) ->
+            items.map { item ->
+                if (item.manga.id != event.manga.id) {
+                    item
+                } else {
+                    val manga = item.manga.copy().apply {
+                        unread = maxOf(unread + event.unreadDelta, 0)
+                        last_update = event.manga.last_update
+                    }
+                    LibraryItem(manga, libraryAsList)
                 }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of this manga.
+     */
+    private fun LibraryManga.copy() = LibraryManga().also {
+        it.id = id
+        it.source = source
+        it.url = url
+        it.title = title
+        it.artist = artist
+        it.author = author
+        it.description = description
+        it.genre = genre
+        it.status = status
+        it.thumbnail_url = thumbnail_url
+        it.favorite = favorite
+        it.last_update = last_update
+        it.initialized = initialized
+        it.viewer = viewer
+        it.chapter_flags = chapter_flags
+        it.unread = unread
+        it.category = category
     }
 
     /**
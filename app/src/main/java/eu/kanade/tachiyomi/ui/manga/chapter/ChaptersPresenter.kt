@@ -100,6 +100,14 @@ class ChaptersPresenter(
 
                 }
                 .subscribe { chaptersRelay.call(it) })
+
+        // Find downloaded chapters again when the downloads cache is renewed.
+        add(downloadManager.cacheRenewedRelay
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe {
+                    setDownloadedChapters(chapters)
+                    refreshChapters()
+                })
     }
 
     private fun observeDownloads() {
@@ -130,7 +138,8 @@ class ChaptersPresenter(
     }
 
     /**
-     * Finds and assigns the list of downloaded chapters.
+     * Finds and assigns the list of downloaded chapters, and resets the chapters that are no
+     * longer downloaded.
      *
      * @param chapters the list of chapter from the database.
      */
@@ -138,6 +147,8 @@ class ChaptersPresenter(
         for (chapter in chapters) {
             if (downloadManager.isChapterDownloaded(chapter, manga)) {
                 chapter.status = Download.DOWNLOADED
+            } else if (chapter.download == null) {
+                chapter.status = Download.NOT_DOWNLOADED
             }
         }
     }
@@ -4,7 +4,10 @@ import android.os.Bundle
 import eu.kanade.tachiyomi.data.database.DatabaseHelper
 import eu.kanade.tachiyomi.data.database.models.MangaChapter
 import eu.kanade.tachiyomi.data.download.DownloadManager
+import eu.kanade.tachiyomi.data.database.tables.ChapterTable
 import eu.kanade.tachiyomi.data.download.model.Download
+import eu.kanade.tachiyomi.data.library.LibraryUpdateEvent
+import eu.kanade.tachiyomi.data.library.LibraryUpdateService
 import eu.kanade.tachiyomi.data.preference.PreferencesHelper
 import eu.kanade.tachiyomi.source.SourceManager
 import eu.kanade.tachiyomi.ui.base.presenter.BasePresenter
@@ -41,7 +44,9 @@ class RecentChaptersPresenter(
     }
 
     /**
-     * Get observable containing recent chapters and date
+     * Get observable containing recent chapters and date. While the library is updating, the
+     * chapters found by the update are added to the last list instead of querying the database
+     * again.
      *
      * @return observable containing recent chapters and date
      */
@@ -52,7 +57,9 @@ class RecentChaptersPresenter(
             add(Calendar.MONTH, -1)
         }
 
-        return db.getRecentChapters(cal.time).asRxObservable()
+        return LibraryUpdateService.observeWithUpdates(db, setOf(ChapterTable.TABLE),
+                { db.getRecentChapters(cal.time).executeAsBlocking() },
+                { list, event -> addNewChapters(list, event, cal.time.time) })
                 // Convert to a list of recent chapters.
                 .map { mangaChapters ->
                     val map = TreeMap<Date, MutableList<MangaChapter>> { d1, d2 -> d2.compareTo(d1) }
@@ -80,6 +87,24 @@ class RecentChaptersPresenter(
                 }
     }
 
+    /**
+     * Returns a new list with the chapters of the given list and the new chapters of an updated
+     * manga, in the same order as the database returns them.
+     *
+     * @param list the current list of chapters.
+     * @param event the result of the update of a manga.
+     * @param dateLimit the minimum upload date of the chapters.
+     */
+    private fun addNewChapters(list: List<MangaChapter>, event: LibraryUpdateEvent,
+                               dateLimit: Long): List<MangaChapter> {
+        val newChapters = event.newChapters
+                .filter { it.date_upload > dateLimit }
+                .map { MangaChapter(event.manga, it) }
+
+        if (newChapters.isEmpty()) return list
+        return (newChapters + list).sortedByDescending { it.chapter.date_upload }
+    }
+
     /**
      * Get date as time key
      *
@@ -108,7 +133,8 @@ class RecentChaptersPresenter(
     }
 
     /**
-     * Finds and assigns the list of downloaded chapters.
+     * Finds and assigns the list of downloaded chapters, and resets the chapters that are no
+     * longer downloaded.
      *
      * @param items the list of chapter from the database.
      */
@@ -119,6 +145,8 @@ class RecentChaptersPresenter(
 
             if (downloadManager.isChapterDownloaded(chapter, manga)) {
                 item.status = Download.DOWNLOADED
+            } else if (item.download == null) {
+                item.status = Download.NOT_DOWNLOADED
             }
         }
     }
@@ -1,8 +1,10 @@
 package eu.kanade.tachiyomi.ui.setting
 
 import android.app.Dialog
+import android.content.Context
 import android.os.Bundle
 import android.support.v7.preference.PreferenceScreen
+import android.text.format.Formatter
 import android.view.View
 import com.afollestad.materialdialogs.MaterialDialog
 import com.bluelinelabs.conductor.RouterTransaction
@@ -12,6 +14,7 @@ import eu.kanade.tachiyomi.data.cache.ChapterCache
 import eu.kanade.tachiyomi.data.database.DatabaseHelper
 import eu.kanade.tachiyomi.data.library.LibraryUpdateService
 import eu.kanade.tachiyomi.data.library.LibraryUpdateService.Target
+import eu.kanade.tachiyomi.data.preference.PreferenceKeys as Keys
 import eu.kanade.tachiyomi.network.NetworkHelper
 import eu.kanade.tachiyomi.ui.base.controller.DialogController
 import eu.kanade.tachiyomi.ui.library.LibraryController
@@ -47,6 +50,20 @@ class SettingsAdvancedController : SettingsController() {
                 activity?.toast(R.string.cookies_cleared)
             }
         }
+        intListPreference {
+            key = Keys.networkCacheSize
+            titleRes = R.string.pref_network_cache_size
+            entries = arrayOf("5 MB", "10 MB", "25 MB", "50 MB", "100 MB")
+            entryValues = arrayOf("5", "10", "25", "50", "100")
+            defaultValue = "25"
+            summary = "%s"
+        }
+        preference {
+            titleRes = R.string.pref_network_cache_stats
+            summary = getNetworkCacheStats(context)
+
+            onClick { summary = getNetworkCacheStats(context) }
+        }
         preference {
             titleRes = R.string.pref_clear_database
             summaryRes = R.string.pref_clear_database_summary
@@ -71,6 +88,19 @@ class SettingsAdvancedController : SettingsController() {
         }
     }
 
+    /**
+     * Returns the hits, requests and used size of the network cache since the app started.
+     */
+    private fun getNetworkCacheStats(context: Context): String {
+        val cache = network.cache
+        val requests = cache.requestCount()
+        val hits = cache.hitCount()
+        val percent = if (requests > 0) hits * 100 / requests else 0
+        val size = Formatter.formatFileSize(context, cache.size())
+        return context.getString(R.string.network_cache_stats, hits, requests, percent,
+                cache.networkCount(), size)
+    }
+
     private fun clearChapterCache() {
         if (activity == null) return
         val files = chapterCache.cacheDir.listFiles() ?: return
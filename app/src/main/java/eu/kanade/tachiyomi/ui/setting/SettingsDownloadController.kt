@@ -61,6 +61,36 @@ class SettingsDownloadController : SettingsController() {
             titleRes = R.string.pref_download_only_over_wifi
             defaultValue = true
         }
+        intListPreference {
+            key = Keys.downloadPageThreads
+            titleRes = R.string.pref_download_page_threads
+            entries = arrayOf("1", "2", "3", "4", "5")
+            entryValues = arrayOf("1", "2", "3", "4", "5")
+            defaultValue = "3"
+            summary = "%s"
+        }
+        intListPreference {
+            key = Keys.downloadChapterThreads
+            titleRes = R.string.pref_download_chapter_threads
+            entries = arrayOf("1", "2", "3", "4", "5")
+            entryValues = arrayOf("1", "2", "3", "4", "5")
+            defaultValue = "2"
+            summary = "%s"
+        }
+        intListPreference {
+            key = Keys.downloadSourceThreads
+            titleRes = R.string.pref_download_source_threads
+            entries = arrayOf("1", "2", "3")
+            entryValues = arrayOf("1", "2", "3")
+            defaultValue = "1"
+            summary = "%s"
+        }
+        switchPreference {
+            key = Keys.saveChaptersAsCbz
+            titleRes = R.string.pref_save_chapter_as_cbz
+            summaryRes = R.string.pref_save_chapter_as_cbz_summary
+            defaultValue = false
+        }
         preferenceCategory {
             titleRes = R.string.pref_remove_after_read
 
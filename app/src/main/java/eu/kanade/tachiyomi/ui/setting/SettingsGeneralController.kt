@@ -136,6 +136,43 @@ class SettingsGeneralController : SettingsController() {
             titleRes = R.string.pref_update_only_non_completed
             defaultValue = false
         }
+        intListPreference {
+            key = Keys.libraryUpdateThreads
+            titleRes = R.string.pref_library_update_threads
+            entries = arrayOf("1", "2", "4", "6", "8")
+            entryValues = arrayOf("1", "2", "4", "6", "8")
+            defaultValue = "4"
+            summary = "%s"
+        }
+        intListPreference {
+            key = Keys.libraryUpdateSourceThreads
+            titleRes = R.string.pref_library_update_source_threads
+            entries = arrayOf("1", "2", "3")
+            entryValues = arrayOf("1", "2", "3")
+            defaultValue = "2"
+            summary = "%s"
+        }
+        intListPreference {
+            key = Keys.libraryUpdateMaxAge
+            titleRes = R.string.pref_library_update_max_age
+            entriesRes = arrayOf(R.string.update_always, R.string.update_24hour,
+                    R.string.update_48hour, R.string.update_weekly, R.string.update_monthly)
+            entryValues = arrayOf("0", "1", "2", "7", "30")
+            defaultValue = "0"
+            summary = "%s"
+
+            preferences.libraryUpdateInterval().asObservable()
+                    .subscribeUntilDestroy { isVisible = it > 0 }
+        }
+        intListPreference {
+            key = Keys.libraryUpdateResumeWindow
+            titleRes = R.string.pref_library_update_resume
+            entriesRes = arrayOf(R.string.resume_never, R.string.resume_1hour,
+                    R.string.resume_6hour, R.string.resume_24hour)
+            entryValues = arrayOf("0", "1", "6", "24")
+            defaultValue = "6"
+            summary = "%s"
+        }
 
         val dbCategories = db.getCategories().executeAsBlocking()
 
@@ -4,141 +4,404 @@ import eu.kanade.tachiyomi.source.model.SChapter
 import eu.kanade.tachiyomi.source.model.SManga
 
 /**
+ * Recognizes the chapter number from the name of a chapter. The name is parsed by hand instead of
+ * with regexes, as this is done for every chapter of every synced chapter list. The patterns
+ * recognized are described with their regex equivalent.
+ *
  * -R> = regex conversion.
  */
 object ChapterRecognition {
+
     /**
-     * All cases with Ch.xx
-     * Mokushiroku Alice Vol.1 Ch. 4: Misrepresentation -R> 4
+     * Tags removed when they're followed by a number, in the order they're tried.
+     * Example Prison School 12 v.1 vol004 version1243 volume64 -R> Prison School 12
+     * Regex: (?<![a-z])(v|ver|vol|version|volume|season|s).?[0-9]+
      */
-    private val basic = Regex("""(?<=ch\.) *([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?""")
+    private val unwantedTags = arrayOf("v", "ver", "vol", "version", "volume", "season", "s")
 
     /**
-     * Regex used when only one number occurrence
-     * Example: Bleach 567: Down With Snowwhite -R> 567
+     * Suffixes joined to the previous word when they're separated by a whitespace.
+     * Example One Piece 12 special -R> One Piece 12special
+     * Regex: (\s)(extra|special|omake)
      */
-    private val occurrence = Regex("""([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?""")
+    private val joinedSuffixes = arrayOf("extra", "special", "omake")
 
     /**
-     * Regex used when manga title removed
-     * Example: Solanin 028 Vol. 2 -> 028 Vol.2 -> 028Vol.2 -R> 028
+     * Powers of ten that can be represented exactly by a float.
      */
-    private val withoutManga = Regex("""^([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?""")
+    private val powersOfTen = floatArrayOf(1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f)
 
     /**
-     * Regex used to remove unwanted tags
-     * Example Prison School 12 v.1 vol004 version1243 volume64 -R> Prison School 12
+     * Maximum amount of recognized numbers kept in [cache].
      */
-    private val unwanted = Regex("""(?<![a-z])(v|ver|vol|version|volume|season|s).?[0-9]+""")
+    private const val CACHE_SIZE = 10000
 
     /**
-     * Regex used to remove unwanted whitespace
-     * Example One Piece 12 special -R> One Piece 12special
+     * Numbers recognized recently, by manga title and chapter name. Chapter names rarely change
+     * between fetches of a chapter list, so most of them are only recognized once. Access to the
+     * cache must be synchronized.
      */
-    private val unwantedWhiteSpace = Regex("""(\s)(extra|special|omake)""")
+    private val cache = object : LinkedHashMap<Pair<String, String>, Float>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Pair<String, String>, Float>?): Boolean {
+            return size > CACHE_SIZE
+        }
+    }
 
     fun parseChapterNumber(chapter: SChapter, manga: SManga) {
         // If chapter number is known return.
         if (chapter.chapter_number == -2f || chapter.chapter_number > -1f)
             return
 
+        val key = Pair(manga.title, chapter.name)
+        val cached = synchronized(cache) { cache[key] }
+        if (cached != null) {
+            chapter.chapter_number = cached
+            return
+        }
+
+        recognizeChapterNumber(chapter, manga)
+        synchronized(cache) { cache.put(key, chapter.chapter_number) }
+    }
+
+    /**
+     * Recognizes the number of the given chapter, leaving it unchanged if there isn't any.
+     */
+    private fun recognizeChapterNumber(chapter: SChapter, manga: SManga) {
         // Get chapter title with lower case
-        var name = chapter.name.toLowerCase()
+        val name = chapter.name.toLowerCase()
 
-        // Remove comma's from chapter.
-        name = name.replace(',', '.')
+        // Copy the name to a buffer, where it's modified in place. Remove comma's from chapter.
+        val buffer = CharArray(name.length)
+        for (i in 0 until name.length) {
+            val c = name[i]
+            buffer[i] = if (c == ',') '.' else c
+        }
+        var length = buffer.size
 
         // Remove unwanted white spaces.
-        unwantedWhiteSpace.findAll(name).let {
-            it.forEach { occurrence -> name = name.replace(occurrence.value, occurrence.value.trim()) }
-        }
+        length = joinSuffixes(buffer, length)
 
         // Remove unwanted tags.
-        unwanted.findAll(name).let {
-            it.forEach { occurrence -> name = name.replace(occurrence.value, "") }
-        }
+        length = removeUnwantedTags(buffer, length)
 
         // Check base case ch.xx
-        if (updateChapter(basic.find(name), chapter))
+        // Mokushiroku Alice Vol.1 Ch. 4: Misrepresentation -R> 4
+        // Regex: (?<=ch\.) *([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?
+        val basic = findBasic(buffer, length)
+        if (basic != -1) {
+            updateChapter(buffer, basic, length, chapter)
             return
-
-        // Check one number occurrence.
-        val occurrences: MutableList<MatchResult> = arrayListOf()
-        occurrence.findAll(name).let {
-            it.forEach { occurrence -> occurrences.add(occurrence) }
         }
 
-        if (occurrences.size == 1) {
-            if (updateChapter(occurrences[0], chapter))
-                return
+        // Check one number occurrence.
+        // Example: Bleach 567: Down With Snowwhite -R> 567
+        // Regex: ([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?
+        val occurrence = findNumber(buffer, 0, length)
+        if (occurrence != -1 && findNumber(buffer, numberEnd(buffer, occurrence, length), length) == -1) {
+            updateChapter(buffer, occurrence, length, chapter)
+            return
         }
 
         // Remove manga title from chapter title.
-        val nameWithoutManga = name.replace(manga.title.toLowerCase(), "").trim()
+        val title = manga.title.toLowerCase().toCharArray()
+        length = replaceAll(buffer, length, title, 0, title.size, title.size)
+
+        var start = 0
+        var end = length
+        while (start < end && buffer[start].isWhitespace()) start++
+        while (end > start && buffer[end - 1].isWhitespace()) end--
 
         // Check if first value is number after title remove.
-        if (updateChapter(withoutManga.find(nameWithoutManga), chapter))
+        // Example: Solanin 028 Vol. 2 -> 028 Vol.2 -> 028Vol.2 -R> 028
+        // Regex: ^([0-9]+)(\.[0-9]+)?(\.?[a-z]+)?
+        if (start < end && isDigit(buffer[start])) {
+            updateChapter(buffer, start, end, chapter)
             return
+        }
 
         // Take the first number encountered.
-        if (updateChapter(occurrence.find(nameWithoutManga), chapter))
-            return
+        val number = findNumber(buffer, start, end)
+        if (number != -1) {
+            updateChapter(buffer, number, end, chapter)
+        }
     }
 
     /**
-     * Check if volume is found and update chapter
-     * @param match result of regex
-     * @param chapter chapter object
-     * @return true if volume is found
+     * Removes the whitespace before every suffix in [joinedSuffixes]. Like replacing every
+     * occurrence of the matches of the regex with the trimmed match, one after the other.
+     *
+     * @return the new length of the buffer.
      */
-    fun updateChapter(match: MatchResult?, chapter: SChapter): Boolean {
-        match?.let {
-            val initial = it.groups[1]?.value?.toFloat()!!
-            val subChapterDecimal = it.groups[2]?.value
-            val subChapterAlpha = it.groups[3]?.value
-            val addition = checkForDecimal(subChapterDecimal, subChapterAlpha)
-            chapter.chapter_number = initial.plus(addition)
-            return true
+    private fun joinSuffixes(buffer: CharArray, length: Int): Int {
+        var i = 0
+        while (i < length && matchJoinedSuffix(buffer, length, i) == -1) i++
+        if (i == length) return length
+
+        // The matches are searched in the name before replacing any of them.
+        val source = buffer.copyOf(length)
+        var newLength = length
+        while (i < source.size) {
+            val end = matchJoinedSuffix(source, source.size, i)
+            if (end == -1) {
+                i++
+            } else {
+                newLength = replaceAll(buffer, newLength, source, i, end, i + 1)
+                i = end
+            }
         }
-        return false
+        return newLength
     }
 
     /**
-     * Check for decimal in received strings
-     * @param decimal decimal value of regex
-     * @param alpha alpha value of regex
-     * @return decimal/alpha float value
+     * Returns the end of the whitespace and suffix at the given position, or -1 if there isn't one.
      */
-    fun checkForDecimal(decimal: String?, alpha: String?): Float {
-        if (!decimal.isNullOrEmpty())
-            return decimal?.toFloat()!!
+    private fun matchJoinedSuffix(text: CharArray, length: Int, index: Int): Int {
+        if (!isRegexWhitespace(text[index])) return -1
 
-        if (!alpha.isNullOrEmpty()) {
-            if (alpha!!.contains("extra"))
-                return .99f
-
-            if (alpha.contains("omake"))
-                return .98f
+        for (suffix in joinedSuffixes) {
+            if (regionMatches(text, length, index + 1, suffix)) return index + 1 + suffix.length
+        }
+        return -1
+    }
 
-            if (alpha.contains("special"))
-                return .97f
+    /**
+     * Removes the tags in [unwantedTags]. Like removing every occurrence of the matches of the
+     * regex, one after the other.
+     *
+     * @return the new length of the buffer.
+     */
+    private fun removeUnwantedTags(buffer: CharArray, length: Int): Int {
+        var i = 0
+        while (i < length && matchUnwantedTag(buffer, length, i) == -1) i++
+        if (i == length) return length
 
-            if (alpha[0] == '.') {
-                // Take value after (.)
-                return parseAlphaPostFix(alpha[1])
+        // The matches are searched in the name before removing any of them.
+        val source = buffer.copyOf(length)
+        var newLength = length
+        while (i < source.size) {
+            val end = matchUnwantedTag(source, source.size, i)
+            if (end == -1) {
+                i++
             } else {
-                return parseAlphaPostFix(alpha[0])
+                newLength = replaceAll(buffer, newLength, source, i, end, end)
+                i = end
             }
         }
+        return newLength
+    }
+
+    /**
+     * Returns the end of the tag and its number at the given position, or -1 if there isn't one.
+     */
+    private fun matchUnwantedTag(text: CharArray, length: Int, index: Int): Int {
+        if (index > 0 && text[index - 1] in 'a'..'z') return -1
+
+        for (tag in unwantedTags) {
+            if (!regionMatches(text, length, index, tag)) continue
+
+            // An optional character followed by the number.
+            val next = index + tag.length
+            if (next + 1 < length && !isLineTerminator(text[next]) && isDigit(text[next + 1]))
+                return digitsEnd(text, next + 1, length)
+            if (next < length && isDigit(text[next]))
+                return digitsEnd(text, next, length)
+        }
+        return -1
+    }
+
+    /**
+     * Returns the position of the number after the first "ch." followed by spaces and a number,
+     * or -1 if there isn't one.
+     */
+    private fun findBasic(buffer: CharArray, length: Int): Int {
+        for (i in 3 until length) {
+            if (buffer[i - 3] != 'c' || buffer[i - 2] != 'h' || buffer[i - 1] != '.') continue
+
+            var j = i
+            while (j < length && buffer[j] == ' ') j++
+            if (j < length && isDigit(buffer[j])) return j
+        }
+        return -1
+    }
+
+    /**
+     * Returns the position of the first digit between [start] and [end], or -1 if there isn't one.
+     */
+    private fun findNumber(buffer: CharArray, start: Int, end: Int): Int {
+        for (i in start until end) {
+            if (isDigit(buffer[i])) return i
+        }
+        return -1
+    }
+
+    /**
+     * Returns the end of the chapter number starting at [start], with its decimals or its suffix.
+     */
+    private fun numberEnd(buffer: CharArray, start: Int, end: Int): Int {
+        val integerEnd = digitsEnd(buffer, start, end)
+        val decimalEnd = decimalEnd(buffer, integerEnd, end)
+        return if (decimalEnd != integerEnd) decimalEnd else alphaEnd(buffer, integerEnd, end)
+    }
+
+    /**
+     * Updates the number of the chapter with the number starting at [start].
+     *
+     * @param buffer the name of the chapter.
+     * @param start the position of the first digit of the number.
+     * @param end the end of the name.
+     * @param chapter chapter object
+     */
+    private fun updateChapter(buffer: CharArray, start: Int, end: Int, chapter: SChapter) {
+        val integerEnd = digitsEnd(buffer, start, end)
+        val initial = parseFloat(buffer, start, integerEnd)
+
+        val decimalEnd = decimalEnd(buffer, integerEnd, end)
+        val addition = if (decimalEnd != integerEnd) {
+            parseDecimal(buffer, integerEnd + 1, decimalEnd)
+        } else {
+            checkForAlpha(buffer, integerEnd, alphaEnd(buffer, integerEnd, end))
+        }
+        chapter.chapter_number = initial.plus(addition)
+    }
+
+    /**
+     * Check for alpha in the given range
+     * @return alpha float value
+     */
+    private fun checkForAlpha(buffer: CharArray, start: Int, end: Int): Float {
+        if (start == end)
+            return .0f
 
-        return .0f
+        if (contains(buffer, start, end, "extra"))
+            return .99f
+
+        if (contains(buffer, start, end, "omake"))
+            return .98f
+
+        if (contains(buffer, start, end, "special"))
+            return .97f
+
+        // Take value after (.)
+        return parseAlphaPostFix(if (buffer[start] == '.') buffer[start + 1] else buffer[start])
     }
 
     /**
      * x.a -> x.1, x.b -> x.2, etc
      */
     private fun parseAlphaPostFix(alpha: Char): Float {
-        return ("0." + Integer.toString(alpha.toInt() - 96)).toFloat()
+        // Same as parsing "0.<position>", so x.j -> x.1 and x.k -> x.11
+        val position = alpha.toInt() - 96
+        return if (position < 10) position / 10f else position / 100f
+    }
+
+    /**
+     * Returns the end of the digits starting at [start].
+     */
+    private fun digitsEnd(buffer: CharArray, start: Int, end: Int): Int {
+        var i = start
+        while (i < end && isDigit(buffer[i])) i++
+        return i
+    }
+
+    /**
+     * Returns the end of the decimals at [start] (\.[0-9]+), or [start] if there aren't any.
+     */
+    private fun decimalEnd(buffer: CharArray, start: Int, end: Int): Int {
+        if (start + 1 < end && buffer[start] == '.' && isDigit(buffer[start + 1]))
+            return digitsEnd(buffer, start + 1, end)
+        return start
+    }
+
+    /**
+     * Returns the end of the letters at [start] (\.?[a-z]+), or [start] if there aren't any.
+     */
+    private fun alphaEnd(buffer: CharArray, start: Int, end: Int): Int {
+        var i = if (start < end && buffer[start] == '.') start + 1 else start
+        if (i >= end || buffer[i] !in 'a'..'z') return start
+
+        while (i < end && buffer[i] in 'a'..'z') i++
+        return i
+    }
+
+    /**
+     * Parses the digits between [start] and [end] as a float, rounded like [String.toFloat].
+     */
+    private fun parseFloat(buffer: CharArray, start: Int, end: Int): Float {
+        if (end - start > 18) return String(buffer, start, end - start).toFloat()
+
+        var value = 0L
+        for (i in start until end) {
+            value = value * 10 + (buffer[i] - '0')
+        }
+        return value.toFloat()
     }
 
+    /**
+     * Parses the digits between [start] and [end] as the decimals of a number, rounded like
+     * [String.toFloat].
+     */
+    private fun parseDecimal(buffer: CharArray, start: Int, end: Int): Float {
+        // The quotient of two exact floats is rounded only once.
+        if (end - start >= powersOfTen.size) return String(buffer, start - 1, end - start + 1).toFloat()
+
+        return parseFloat(buffer, start, end) / powersOfTen[end - start]
+    }
+
+    /**
+     * Replaces every occurrence of the range of [value] between [from] and [to] in the buffer with
+     * the range between [keep] and [to], like [String.replace].
+     *
+     * @return the new length of the buffer.
+     */
+    private fun replaceAll(buffer: CharArray, length: Int, value: CharArray, from: Int, to: Int, keep: Int): Int {
+        val size = to - from
+        if (size == 0) return length
+
+        var read = 0
+        var write = 0
+        while (read < length) {
+            if (read + size <= length && regionMatches(buffer, read, value, from, size)) {
+                for (i in keep until to) buffer[write++] = value[i]
+                read += size
+            } else {
+                buffer[write++] = buffer[read++]
+            }
+        }
+        return write
+    }
+
+    private fun regionMatches(text: CharArray, length: Int, index: Int, other: String): Boolean {
+        if (index + other.length > length) return false
+        for (i in 0 until other.length) {
+            if (text[index + i] != other[i]) return false
+        }
+        return true
+    }
+
+    private fun regionMatches(text: CharArray, index: Int, other: CharArray, from: Int, size: Int): Boolean {
+        for (i in 0 until size) {
+            if (text[index + i] != other[from + i]) return false
+        }
+        return true
+    }
+
+    private fun contains(buffer: CharArray, start: Int, end: Int, other: String): Boolean {
+        for (i in start..end - other.length) {
+            if (regionMatches(buffer, end, i, other)) return true
+        }
+        return false
+    }
+
+    private fun isDigit(c: Char) = c in '0'..'9'
+
+    /**
+     * Whitespace matched by \s in a regex.
+     */
+    private fun isRegexWhitespace(c: Char) = c == ' ' || c in '\t'..'\r'
+
+    /**
+     * Line terminators not matched by . in a regex.
+     */
+    private fun isLineTerminator(c: Char) = c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+
 }
@@ -6,6 +6,8 @@ import eu.kanade.tachiyomi.data.database.models.Manga
 import eu.kanade.tachiyomi.source.Source
 import eu.kanade.tachiyomi.source.model.SChapter
 import eu.kanade.tachiyomi.source.online.HttpSource
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
 import java.util.*
 
 /**
@@ -37,30 +39,7 @@ fun syncChaptersWithSource(db: DatabaseHelper,
         }
     }
 
-    // Chapters from the source not in db.
-    val toAdd = mutableListOf<Chapter>()
-
-    // Chapters whose metadata have changed.
-    val toChange = mutableListOf<Chapter>()
-
-    for (sourceChapter in sourceChapters) {
-        val dbChapter = dbChapters.find { it.url == sourceChapter.url }
-
-        // Add the chapter if not in db already, or update if the metadata changed.
-        if (dbChapter == null) {
-            toAdd.add(sourceChapter)
-        } else {
-            //this forces metadata update for the main viewable things in the chapter list
-            ChapterRecognition.parseChapterNumber(sourceChapter, manga)
-            if (shouldUpdateDbChapter(dbChapter, sourceChapter)) {
-                dbChapter.scanlator = sourceChapter.scanlator
-                dbChapter.name = sourceChapter.name
-                dbChapter.date_upload = sourceChapter.date_upload
-                dbChapter.chapter_number = sourceChapter.chapter_number
-                toChange.add(dbChapter)
-            }
-        }
-    }
+    val (toAdd, toChange, toDelete) = diffChapters(dbChapters, sourceChapters, manga)
 
     // Recognize number for new chapters.
     toAdd.forEach {
@@ -70,13 +49,6 @@ fun syncChaptersWithSource(db: DatabaseHelper,
         ChapterRecognition.parseChapterNumber(it, manga)
     }
 
-    // Chapters from the db not in the source.
-    val toDelete = dbChapters.filterNot { dbChapter ->
-        sourceChapters.any { sourceChapter ->
-            dbChapter.url == sourceChapter.url
-        }
-    }
-
     // Return if there's nothing to add, delete or change, avoiding unnecessary db transactions.
     if (toAdd.isEmpty() && toDelete.isEmpty() && toChange.isEmpty()) {
         return Pair(emptyList(), emptyList())
@@ -113,7 +85,10 @@ fun syncChaptersWithSource(db: DatabaseHelper,
                     readded.add(c)
                 }
             }
-            db.insertChapters(toAdd).executeAsBlocking()
+            // Keep the ids of the new chapters, so that they can be used without querying them.
+            db.insertChapters(toAdd).executeAsBlocking().results().forEach { (chapter, result) ->
+                result.insertedId()?.let { chapter.id = it }
+            }
         }
 
         if (!toChange.isEmpty()) {
@@ -127,6 +102,84 @@ fun syncChaptersWithSource(db: DatabaseHelper,
 
 }
 
+/**
+ * Compares the chapters from the source with the ones from the database by their url. It takes
+ * linear time, as both lists are indexed by url first.
+ *
+ * @param dbChapters the chapters from the database.
+ * @param sourceChapters the chapters from the source.
+ * @param manga the manga of the chapters.
+ * @return a triple of the chapters from the source not in the database, the chapters from the
+ * database whose metadata changed, already updated, and the chapters from the database not in the
+ * source.
+ */
+internal fun diffChapters(dbChapters: List<Chapter>,
+                          sourceChapters: List<Chapter>,
+                          manga: Manga): Triple<List<Chapter>, List<Chapter>, List<Chapter>> {
+
+    // Chapters from db by url. If the url is repeated, the first chapter is used.
+    val dbChaptersByUrl = HashMap<String, Chapter>(dbChapters.size)
+    for (dbChapter in dbChapters) {
+        if (dbChapter.url !in dbChaptersByUrl) {
+            dbChaptersByUrl.put(dbChapter.url, dbChapter)
+        }
+    }
+
+    // Chapters from the source not in db.
+    val toAdd = mutableListOf<Chapter>()
+
+    // Chapters whose metadata have changed.
+    val toChange = mutableListOf<Chapter>()
+
+    for (sourceChapter in sourceChapters) {
+        val dbChapter = dbChaptersByUrl[sourceChapter.url]
+
+        // Add the chapter if not in db already, or update if the metadata changed.
+        if (dbChapter == null) {
+            toAdd.add(sourceChapter)
+        } else {
+            //this forces metadata update for the main viewable things in the chapter list
+            ChapterRecognition.parseChapterNumber(sourceChapter, manga)
+            if (shouldUpdateDbChapter(dbChapter, sourceChapter)) {
+                dbChapter.scanlator = sourceChapter.scanlator
+                dbChapter.name = sourceChapter.name
+                dbChapter.date_upload = sourceChapter.date_upload
+                dbChapter.chapter_number = sourceChapter.chapter_number
+                toChange.add(dbChapter)
+            }
+        }
+    }
+
+    // Chapters from the db not in the source.
+    val sourceUrls = sourceChapters.mapTo(HashSet(sourceChapters.size)) { it.url }
+    val toDelete = dbChapters.filterNot { it.url in sourceUrls }
+
+    return Triple(toAdd, toChange, toDelete)
+}
+
+/**
+ * Returns a digest of the list of chapters from the source, which changes if any of the fields
+ * used by [syncChaptersWithSource] or their order change.
+ *
+ * @param rawSourceChapters a list of chapters from the source.
+ * @param manga the manga of the chapters.
+ */
+fun getChapterListDigest(rawSourceChapters: List<SChapter>, manga: Manga): String {
+    val buffer = ByteArrayOutputStream()
+    DataOutputStream(buffer).use { output ->
+        // The title is used to recognize chapter numbers.
+        output.writeUTF(manga.title)
+        for (chapter in rawSourceChapters) {
+            output.writeUTF(chapter.url)
+            output.writeUTF(chapter.name)
+            output.writeUTF(chapter.scanlator.orEmpty())
+            output.writeLong(chapter.date_upload)
+            output.writeFloat(chapter.chapter_number)
+        }
+    }
+    return Hash.md5(buffer.toByteArray())
+}
+
 //checks if the chapter in db needs updated
 private fun shouldUpdateDbChapter(dbChapter: Chapter, sourceChapter: SChapter): Boolean {
     return dbChapter.scanlator != sourceChapter.scanlator || dbChapter.name != sourceChapter.name ||
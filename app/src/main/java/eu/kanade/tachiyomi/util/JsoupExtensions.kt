@@ -18,9 +18,16 @@ fun Element.attrOrText(css: String): String {
 }
 
 /**
- * Returns a Jsoup document for this response.
+ * Returns a Jsoup document for this response. The body is parsed while it's read, without copying
+ * it to a string first. Its charset is taken from the headers or detected from the document.
  * @param html the body of the response. Use only if the body was read before calling this method.
  */
 fun Response.asJsoup(html: String? = null): Document {
-    return Jsoup.parse(html ?: body()!!.string(), request().url().toString())
+    val baseUri = request().url().toString()
+    if (html != null) {
+        return Jsoup.parse(html, baseUri)
+    }
+    return body()!!.use { body ->
+        Jsoup.parse(body.byteStream(), body.contentType()?.charset()?.name(), baseUri)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package eu.kanade.tachiyomi.util
+
+import android.content.Context
+import android.net.Uri
+import java.io.FileInputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Reads the central directory of a zip archive from any uri the content resolver can open, which
+ * includes SAF documents where [java.util.zip.ZipFile] can't be used. Only uncompressed entries
+ * are returned, as those can be read directly from the archive given their offset and length.
+ */
+object StoredZipReader {
+
+    private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+    private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+    private const val END_SIGNATURE = 0x06054b50
+
+    private const val LOCAL_HEADER_SIZE = 30
+    private const val CENTRAL_HEADER_SIZE = 46
+    private const val END_SIZE = 22
+    private const val MAX_COMMENT_SIZE = 0xFFFF
+
+    private const val METHOD_STORED = 0
+
+    /**
+     * An uncompressed entry of an archive.
+     *
+     * @param name the name of the entry.
+     * @param offset the position of the entry's data in the archive.
+     * @param length the length of the entry's data.
+     */
+    data class Entry(val name: String, val offset: Long, val length: Long)
+
+    /**
+     * Returns the uncompressed entries of the archive at the given uri.
+     *
+     * @param context the application context.
+     * @param uri the uri of the archive.
+     * @throws IOException if the archive can't be opened or it's not a valid zip file.
+     */
+    fun readEntries(context: Context, uri: Uri): List<Entry> {
+        val descriptor = context.contentResolver.openFileDescriptor(uri, "r")
+                ?: throw IOException("Unable to open $uri")
+
+        return descriptor.use {
+            FileInputStream(it.fileDescriptor).channel.use { channel -> readEntries(channel) }
+        }
+    }
+
+    private fun readEntries(channel: FileChannel): List<Entry> {
+        val (directoryOffset, count) = readEndOfCentralDirectory(channel)
+
+        val entries = ArrayList<Entry>(count)
+        var position = directoryOffset
+        repeat(count) {
+            val header = read(channel, position, CENTRAL_HEADER_SIZE)
+            if (header.getInt(0) != CENTRAL_HEADER_SIGNATURE) {
+                throw IOException("Invalid central directory")
+            }
+            val method = header.getShort(10).toInt() and 0xFFFF
+            val compressedSize = header.getInt(20).toLong() and 0xFFFFFFFFL
+            val nameLength = header.getShort(28).toInt() and 0xFFFF
+            val extraLength = header.getShort(30).toInt() and 0xFFFF
+            val commentLength = header.getShort(32).toInt() and 0xFFFF
+            val localHeaderOffset = header.getInt(42).toLong() and 0xFFFFFFFFL
+
+            val name = String(read(channel, position + CENTRAL_HEADER_SIZE, nameLength).array())
+            if (method == METHOD_STORED && !name.endsWith("/")) {
+                val dataOffset = getDataOffset(channel, localHeaderOffset)
+                entries.add(Entry(name, dataOffset, compressedSize))
+            }
+
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength
+        }
+        return entries
+    }
+
+    /**
+     * Returns the offset and the number of entries of the central directory.
+     */
+    private fun readEndOfCentralDirectory(channel: FileChannel): Pair<Long, Int> {
+        val size = channel.size()
+        if (size < END_SIZE) {
+            throw IOException("Not a zip file")
+        }
+
+        // The record is at the end of the file, followed by a comment of variable length.
+        val searchLength = minOf(size, (END_SIZE + MAX_COMMENT_SIZE).toLong()).toInt()
+        val tail = read(channel, size - searchLength, searchLength)
+        for (i in searchLength - END_SIZE downTo 0) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                val count = tail.getShort(i + 10).toInt() and 0xFFFF
+                val offset = tail.getInt(i + 16).toLong() and 0xFFFFFFFFL
+                return offset to count
+            }
+        }
+        throw IOException("Not a zip file")
+    }
+
+    /**
+     * Returns the offset of the data of the entry whose local header starts at [headerOffset].
+     */
+    private fun getDataOffset(channel: FileChannel, headerOffset: Long): Long {
+        val header = read(channel, headerOffset, LOCAL_HEADER_SIZE)
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw IOException("Invalid local header")
+        }
+        val nameLength = header.getShort(26).toInt() and 0xFFFF
+        val extraLength = header.getShort(28).toInt() and 0xFFFF
+        return headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength
+    }
+
+    private fun read(channel: FileChannel, position: Long, length: Int): ByteBuffer {
+        val buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN)
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw IOException("Unexpected end of file")
+            }
+        }
+        buffer.flip()
+        return buffer
+    }
+
+}
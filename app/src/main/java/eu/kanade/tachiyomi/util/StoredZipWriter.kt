@@ -0,0 +1,99 @@
+package eu.kanade.tachiyomi.util
+
+import java.io.Closeable
+import java.io.File
+import java.io.OutputStream
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Writes files to a zip archive without compressing them. Entries are appended to the stream as
+ * soon as they're added and the central directory is written when the writer is closed.
+ *
+ * Stored entries can be read directly from their offset in the archive, see [StoredZipReader].
+ * If writing an entry fails the archive is left broken, so the writer refuses further entries.
+ *
+ * @param output the stream where the archive is written. It's closed with this writer.
+ */
+class StoredZipWriter(output: OutputStream) : Closeable {
+
+    private val zip = ZipOutputStream(output.buffered()).apply { setMethod(ZipOutputStream.STORED) }
+
+    /**
+     * The names of the entries written to the archive.
+     */
+    private val names = HashSet<String>()
+
+    /**
+     * Whether writing an entry failed.
+     */
+    @Volatile private var failed = false
+
+    /**
+     * Whether the archive is broken by a failed entry. No more entries can be added to it.
+     */
+    val isBroken: Boolean
+        get() = failed
+
+    /**
+     * The amount of entries written to the archive.
+     */
+    @Volatile var entryCount = 0
+        private set
+
+    /**
+     * Adds a file to the archive, streaming its content. The file is read twice, as the checksum
+     * of a stored entry has to be written before its content. It's safe to call this method from
+     * multiple threads.
+     *
+     * @param name the name of the entry. Entries already in the archive aren't added again.
+     * @param file the content of the entry.
+     * @throws IllegalStateException if writing a previous entry failed.
+     */
+    @Synchronized
+    fun addEntry(name: String, file: File) {
+        check(!failed) { "The archive is broken by a failed entry" }
+        if (name in names) return
+
+        val buffer = ByteArray(BUFFER_SIZE)
+        val crc = CRC32()
+        file.inputStream().use { input ->
+            while (true) {
+                val read = input.read(buffer)
+                if (read < 0) break
+                crc.update(buffer, 0, read)
+            }
+        }
+        val entry = ZipEntry(name).apply {
+            method = ZipEntry.STORED
+            size = file.length()
+            compressedSize = file.length()
+            this.crc = crc.value
+        }
+
+        try {
+            zip.putNextEntry(entry)
+            file.inputStream().use { it.copyTo(zip, BUFFER_SIZE) }
+            zip.closeEntry()
+        } catch (e: Exception) {
+            failed = true
+            throw e
+        }
+        names.add(name)
+        entryCount++
+    }
+
+    /**
+     * Writes the central directory and closes the archive.
+     */
+    @Synchronized
+    override fun close() {
+        zip.close()
+    }
+
+    private companion object {
+        const val BUFFER_SIZE = 8192
+    }
+
+}
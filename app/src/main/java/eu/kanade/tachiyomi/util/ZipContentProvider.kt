@@ -18,6 +18,28 @@ class ZipContentProvider : ContentProvider() {
 
     companion object {
         const val PROVIDER = "${BuildConfig.APPLICATION_ID}.zip-provider"
+
+        private const val ARCHIVE_PARAM = "archive"
+        private const val OFFSET_PARAM = "offset"
+        private const val LENGTH_PARAM = "length"
+
+        /**
+         * Returns an uri to read an uncompressed entry of an archive that may not be in the local
+         * filesystem, like a SAF document.
+         *
+         * @param archive the uri of the archive.
+         * @param entry the stored entry of the archive.
+         */
+        fun getStoredEntryUri(archive: Uri, entry: StoredZipReader.Entry): Uri {
+            return Uri.Builder()
+                    .scheme("content")
+                    .authority(PROVIDER)
+                    .appendPath(entry.name)
+                    .appendQueryParameter(ARCHIVE_PARAM, archive.toString())
+                    .appendQueryParameter(OFFSET_PARAM, entry.offset.toString())
+                    .appendQueryParameter(LENGTH_PARAM, entry.length.toString())
+                    .build()
+        }
     }
 
     override fun onCreate(): Boolean {
@@ -25,10 +47,14 @@ class ZipContentProvider : ContentProvider() {
     }
 
     override fun getType(uri: Uri): String? {
-        return URLConnection.guessContentTypeFromName(uri.toString())
+        return URLConnection.guessContentTypeFromName(uri.lastPathSegment ?: uri.toString())
     }
 
     override fun openAssetFile(uri: Uri, mode: String): AssetFileDescriptor? {
+        val archive = uri.getQueryParameter(ARCHIVE_PARAM)
+        if (archive != null) {
+            return openStoredEntry(uri, Uri.parse(archive))
+        }
         try {
             val url = "jar:file://" + uri.toString().substringAfter("content://$PROVIDER")
             val input = URL(url).openStream()
@@ -51,6 +77,21 @@ class ZipContentProvider : ContentProvider() {
         }
     }
 
+    /**
+     * Returns a descriptor of the given archive limited to the range of a stored entry, so that it
+     * can be read without extracting it.
+     */
+    private fun openStoredEntry(uri: Uri, archive: Uri): AssetFileDescriptor? {
+        return try {
+            val offset = uri.getQueryParameter(OFFSET_PARAM).toLong()
+            val length = uri.getQueryParameter(LENGTH_PARAM).toLong()
+            val descriptor = context?.contentResolver?.openFileDescriptor(archive, "r")
+            descriptor?.let { AssetFileDescriptor(it, offset, length) }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
     override fun query(p0: Uri?, p1: Array<out String>?, p2: String?, p3: Array<out String>?, p4: String?): Cursor? {
         return null
     }
@@ -462,4 +462,25 @@ class ChapterRecognitionTest {
         ChapterRecognition.parseChapterNumber(chapter, manga)
         assertThat(chapter.chapter_number).isEqualTo(1f)
     }
+
+    /**
+     * Test for recognized numbers reused for the same manga title and chapter name
+     */
+    @Test fun recognizedNumbersAreCachedByTitle() {
+        createManga("Ayame 14")
+
+        createChapter("Ayame 14 1 - The summer of 14")
+        ChapterRecognition.parseChapterNumber(chapter, manga)
+        assertThat(chapter.chapter_number).isEqualTo(1f)
+
+        createChapter("Ayame 14 1 - The summer of 14")
+        ChapterRecognition.parseChapterNumber(chapter, manga)
+        assertThat(chapter.chapter_number).isEqualTo(1f)
+
+        createManga("Ayame")
+
+        createChapter("Ayame 14 1 - The summer of 14")
+        ChapterRecognition.parseChapterNumber(chapter, manga)
+        assertThat(chapter.chapter_number).isEqualTo(14f)
+    }
 }
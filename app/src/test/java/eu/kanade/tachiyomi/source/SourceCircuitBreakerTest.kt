@@ -0,0 +1,81 @@
+package eu.kanade.tachiyomi.source
+
+import eu.kanade.tachiyomi.source.SourceCircuitBreaker.Companion.FAILURE_THRESHOLD
+import eu.kanade.tachiyomi.source.SourceCircuitBreaker.Companion.MIN_DELAY
+import eu.kanade.tachiyomi.network.HttpException
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.net.SocketTimeoutException
+
+class SourceCircuitBreakerTest {
+
+    private val sourceId = 1L
+
+    private var now = 0L
+
+    private val circuitBreaker = SourceCircuitBreaker({ now })
+
+    private fun fail(times: Int) {
+        repeat(times) { circuitBreaker.onFailure(sourceId) }
+    }
+
+    @Test
+    fun testOpensAfterConsecutiveFailures() {
+        fail(FAILURE_THRESHOLD - 1)
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+
+        fail(1)
+        assertThat(circuitBreaker.allowRequest(sourceId)).isFalse()
+        assertThat(circuitBreaker.allowRequest(2L)).isTrue()
+    }
+
+    @Test
+    fun testSuccessResetsFailures() {
+        fail(FAILURE_THRESHOLD - 1)
+        circuitBreaker.onSuccess(sourceId)
+        fail(FAILURE_THRESHOLD - 1)
+
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+    }
+
+    @Test
+    fun testAllowsSingleProbeAfterDelay() {
+        fail(FAILURE_THRESHOLD)
+
+        now += MIN_DELAY
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+        assertThat(circuitBreaker.allowRequest(sourceId)).isFalse()
+
+        circuitBreaker.onSuccess(sourceId)
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+    }
+
+    @Test
+    fun testFailedProbeDoublesDelay() {
+        fail(FAILURE_THRESHOLD)
+
+        now += MIN_DELAY
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+        fail(1)
+
+        now += MIN_DELAY
+        assertThat(circuitBreaker.allowRequest(sourceId)).isFalse()
+        now += MIN_DELAY
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+    }
+
+    @Test
+    fun testOnlySourceErrorsCountAsFailures() {
+        repeat(FAILURE_THRESHOLD) {
+            circuitBreaker.onError(sourceId, Exception("No chapters found"))
+            circuitBreaker.onError(sourceId, HttpException(404))
+        }
+        assertThat(circuitBreaker.allowRequest(sourceId)).isTrue()
+
+        fail(FAILURE_THRESHOLD - 2)
+        circuitBreaker.onError(sourceId, SocketTimeoutException())
+        circuitBreaker.onError(sourceId, HttpException(503))
+        assertThat(circuitBreaker.allowRequest(sourceId)).isFalse()
+    }
+
+}
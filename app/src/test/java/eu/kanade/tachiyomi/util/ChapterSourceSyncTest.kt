@@ -0,0 +1,54 @@
+package eu.kanade.tachiyomi.util
+
+import eu.kanade.tachiyomi.data.database.models.Chapter
+import eu.kanade.tachiyomi.data.database.models.Manga
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class ChapterSourceSyncTest {
+
+    private val manga = Manga.create("/manga", "Manga")
+
+    /**
+     * Creates a list of chapters with consecutive numbers.
+     *
+     * @param from the number of the first chapter.
+     * @param count the amount of chapters.
+     */
+    private fun createChapters(from: Int, count: Int): List<Chapter> {
+        return (from until from + count).map { number ->
+            Chapter.create().apply {
+                url = "/manga/chapter-$number"
+                name = "Chapter $number"
+                chapter_number = number.toFloat()
+            }
+        }
+    }
+
+    @Test
+    fun testDiff() {
+        val dbChapters = createChapters(0, 10)
+        val sourceChapters = createChapters(5, 10)
+        sourceChapters[0].name = "Chapter 5 renamed"
+
+        val (toAdd, toChange, toDelete) = diffChapters(dbChapters, sourceChapters, manga)
+
+        assertThat(toAdd.map { it.url }).isEqualTo(sourceChapters.drop(5).map { it.url })
+        assertThat(toChange.map { it.name }).containsExactly("Chapter 5 renamed")
+        assertThat(toDelete.map { it.url }).isEqualTo(dbChapters.take(5).map { it.url })
+    }
+
+    @Test
+    fun testDiffOfLargeLists() {
+        val dbChapters = createChapters(0, 5000)
+        val sourceChapters = createChapters(2500, 5000)
+        sourceChapters[0].name = "Chapter 2500 renamed"
+
+        val (toAdd, toChange, toDelete) = diffChapters(dbChapters, sourceChapters, manga)
+
+        assertThat(toAdd.map { it.url }).isEqualTo(sourceChapters.drop(2500).map { it.url })
+        assertThat(toChange.map { it.name }).containsExactly("Chapter 2500 renamed")
+        assertThat(toDelete.map { it.url }).isEqualTo(dbChapters.take(2500).map { it.url })
+    }
+
+}
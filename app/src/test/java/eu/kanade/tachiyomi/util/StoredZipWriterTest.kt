@@ -0,0 +1,112 @@
+package eu.kanade.tachiyomi.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.OutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+
+class StoredZipWriterTest {
+
+    private val files = mutableListOf<File>()
+
+    @After
+    fun tearDown() {
+        files.forEach { it.delete() }
+    }
+
+    /**
+     * Creates a temporary file with the given content.
+     *
+     * @param content the content of the file.
+     */
+    private fun createFile(content: ByteArray): File {
+        return File.createTempFile("entry", null).apply {
+            writeBytes(content)
+            files.add(this)
+        }
+    }
+
+    /**
+     * Reads all the entries of an archive.
+     *
+     * @param bytes the archive.
+     * @return a map of entry names to their content.
+     */
+    private fun readEntries(bytes: ByteArray): Map<String, ByteArray> {
+        val entries = LinkedHashMap<String, ByteArray>()
+        ZipInputStream(ByteArrayInputStream(bytes)).use { zip ->
+            while (true) {
+                val entry = zip.nextEntry ?: break
+                assertThat(entry.method).isEqualTo(ZipEntry.STORED)
+                entries[entry.name] = zip.readBytes()
+            }
+        }
+        return entries
+    }
+
+    @Test
+    fun testEntriesAreReadBack() {
+        val first = "first page".toByteArray()
+        val second = ByteArray(100000) { it.toByte() }
+        val empty = ByteArray(0)
+
+        val output = ByteArrayOutputStream()
+        StoredZipWriter(output).use { archive ->
+            archive.addEntry("001.jpg", createFile(first))
+            archive.addEntry("002.png", createFile(second))
+            archive.addEntry("003.gif", createFile(empty))
+            assertThat(archive.entryCount).isEqualTo(3)
+        }
+
+        val entries = readEntries(output.toByteArray())
+        assertThat(entries.keys).containsExactly("001.jpg", "002.png", "003.gif")
+        assertThat(entries["001.jpg"]).isEqualTo(first)
+        assertThat(entries["002.png"]).isEqualTo(second)
+        assertThat(entries["003.gif"]).isEmpty()
+    }
+
+    @Test
+    fun testDuplicateEntriesAreSkipped() {
+        val output = ByteArrayOutputStream()
+        StoredZipWriter(output).use { archive ->
+            archive.addEntry("001.jpg", createFile("first".toByteArray()))
+            archive.addEntry("001.jpg", createFile("second".toByteArray()))
+            assertThat(archive.entryCount).isEqualTo(1)
+        }
+
+        val entries = readEntries(output.toByteArray())
+        assertThat(entries.keys).containsExactly("001.jpg")
+        assertThat(entries["001.jpg"]).isEqualTo("first".toByteArray())
+    }
+
+    @Test
+    fun testFailedEntryBreaksTheArchive() {
+        val archive = StoredZipWriter(object : OutputStream() {
+            override fun write(b: Int) {
+                throw IOException("No space left")
+            }
+        })
+        // The stream is buffered, so the entry must be large enough to reach it
+        val file = createFile(ByteArray(100000))
+
+        assertThat(archive.isBroken).isFalse()
+        try {
+            archive.addEntry("001.jpg", file)
+        } catch (e: IOException) {
+        }
+        assertThat(archive.isBroken).isTrue()
+
+        try {
+            archive.addEntry("002.jpg", file)
+            throw AssertionError("Expected the archive to refuse the entry")
+        } catch (e: IllegalStateException) {
+        }
+    }
+
+}